@@ -12,7 +12,11 @@
 package com.increff.commons.sheet;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public abstract class AbstractDataFile<T> implements IDataFile<T> {
 
@@ -21,18 +25,32 @@ public abstract class AbstractDataFile<T> implements IDataFile<T> {
     private String nullValue = "null";
     private Integer maxRows = 1_00_000;
     private String fileExtension = ".tsv";
+    private int parallelism = 1;
+    private Compression compression;
+    private int compressionThreads = Compression.DEFAULT_THREADS;
+    private boolean lazyColumns;
+    private int writeBufferSize = 256 * 1024;
+    private StringInterner interner;
+    private boolean dateMemo = true;
+    private StringInterner readInterner;
     private int count;
-    private BufferedReader reader;
-    private BufferedWriter writer;
+    private LineReader reader;
+    private Tokenizer tokenizer;
     private HashMap<String, Integer> headerMap;
+    /**
+     * Column handles of this file. Subclasses declare them as fields, e.g. columns.intCol("sku"), and read rows
+     * through them instead of looking up columns by name
+     */
+    protected final Columns columns = new Columns();
     private IProgressMonitor progress;
     private PagedList<RowError> errors;
-    private ArrayList<T> data;
+    private List<T> data;
 
     /**
      * @params This function takes a string 's' as a delimeter.
      *          By default it is '\t'
      *          To use any different delimeter, please override this function
+     *          The delimeter is matched literally (not as a regex) and may be more than one character long
      */
     public void setDelimiterValue(String s) {
         this.delimValue = s;
@@ -47,6 +65,77 @@ public abstract class AbstractDataFile<T> implements IDataFile<T> {
         this.maxRows = maxRows;
     }
 
+    /**
+     * Map rows on a pool of threads. Rows, row numbers and errors are reported in input order, as in a sequential read.
+     * With more than one thread, read(DataRow) is called concurrently and must not modify shared state
+     *
+     * @param parallelism Number of threads used for parsing and mapping rows. Defaults to 1 (sequential)
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Compress written output in this format instead of the one implied by the file extension, e.g. ".tsv.gz" or
+     * ".tsv.zst". Reads detect the format from the first bytes of the input, whatever this setting
+     *
+     * @param compression Format of written output, null to follow the file extension
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Each writer compresses on its own pool of this many threads. A PartitionedWriter writes up to its
+     * parallelism parts at once, each with its own writer, so keep this low there, or use 1 to compress on the
+     * threads writing the parts
+     *
+     * @param compressionThreads Number of threads compressing blocks of written output. Defaults to 2
+     */
+    public void setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    /**
+     * Keep each line as a buffer with field boundaries instead of splitting it into strings. A token is only cut, or
+     * a primitive parsed straight from the buffer, when read(DataRow) accesses its column, so columns which are never
+     * read never allocate. Useful for wide files of which only a few columns are read
+     *
+     * @param lazyColumns true to materialize columns on access
+     */
+    public void setLazyColumns(boolean lazyColumns) {
+        this.lazyColumns = lazyColumns;
+    }
+
+    /**
+     * Share the strings returned by DataRow.getStringIntern() through the given interner, e.g. one interner held by
+     * the file class, or one per load spanning several files. By default each read uses its own interner, whose
+     * strings are released with the rows of the read
+     *
+     * @param interner Interner to use, null for one per read
+     */
+    public void setInterner(StringInterner interner) {
+        this.interner = interner;
+    }
+
+    /**
+     * Keep a small memo per column of the dates and year-months parsed by DataRow, keyed on their characters, so
+     * repeated values are parsed once. Enabled by default
+     *
+     * @param dateMemo false to parse dates on every access
+     */
+    public void setDateMemo(boolean dateMemo) {
+        this.dateMemo = dateMemo;
+    }
+
+    /**
+     * @param writeBufferSize Size in bytes of the buffer rows are formatted into before they are written to the
+     *                        output stream. Defaults to 256 KB
+     */
+    public void setWriteBufferSize(int writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+    }
+
     public void setNullValue(String s) {
         this.nullValue = s;
     }
@@ -56,17 +145,17 @@ public abstract class AbstractDataFile<T> implements IDataFile<T> {
     }
 
     public List<RowError> getErrors() {
-        return errors.getAll();
+        return errors;
     }
 
     // Public methods
     @Override
-    public void setData(ArrayList<T> data) {
+    public void setData(List<T> data) {
         this.data = data;
     }
 
     @Override
-    public ArrayList<T> getData() {
+    public List<T> getData() {
         return data;
     }
 
@@ -78,36 +167,125 @@ public abstract class AbstractDataFile<T> implements IDataFile<T> {
     @Override
     public void read(InputStream is) throws Exception {
         PagedList<T> pagedList = new PagedList<>();
-        Set<String> expectedHeaderSet = new HashSet<>(Arrays.asList(getHeaders()));
-        errors = new PagedList<>();
-        count = 0;
-        reader = new BufferedReader(new InputStreamReader(is));
-        String line;
+        read(is, pagedList::add);
+        data = pagedList;
+    }
 
-        // Read headers. If no headers, don't read further
-        Set<String> headers = readHeaders();
-        if (!(expectedHeaderSet.isEmpty())) {
-            validateHeaders(headers, expectedHeaderSet);
+    /**
+     * Read and parse lines of data from an input stream, handing each row to the consumer as soon as it is parsed.
+     * Rows are not stored, so getData() is not populated by this method
+     *
+     * @param is       InputStream from which data is to be read
+     * @param consumer Consumer which receives each successfully parsed row
+     */
+    @Override
+    public void read(InputStream is, IRowConsumer<T> consumer) throws Exception {
+        try (RowCursor<T> cursor = openCursor(is)) {
+            cursor.drain(consumer);
         }
-        DataRow dataRow = new DataRow(headerMap);
-        while ((line = reader.readLine()) != null) {
-            count++;
-            if (count > maxRows) {
-                throw new SheetException("Maximum rows allowed is : " + maxRows);
+    }
+
+    /**
+     * Read and parse a local file. With parallelism greater than 1, the file is memory mapped and split at line
+     * boundaries into segments which are parsed concurrently; rows and errors keep their absolute row numbers
+     *
+     * @param file File from which data is to be read
+     */
+    @Override
+    public void read(File file) throws Exception {
+        // Compressed files cannot be split, so they are read as a stream
+        if (parallelism <= 1 || Compression.detect(file) != Compression.NONE) {
+            try (InputStream is = new FileInputStream(file)) {
+                read(is);
+            }
+            return;
+        }
+        PagedList<T> pagedList = new PagedList<>();
+        try (RowCursor<T> cursor = openSegmentCursor(file)) {
+            cursor.drain(pagedList::add);
+        }
+        data = pagedList;
+    }
+
+    /**
+     * Read and validate the headers of an input stream and return a cursor over its rows. Each row is parsed only
+     * when the cursor advances. The cursor must be closed once done
+     *
+     * @param is InputStream from which data is to be read
+     * @return Cursor over the parsed rows
+     */
+    @Override
+    public RowCursor<T> openCursor(InputStream is) throws Exception {
+        openReader(is);
+        if (parallelism > 1) {
+            return openParallelCursor();
+        }
+        DataRow dataRow = newDataRow(lazyColumns);
+        return new RowCursor<T>() {
+
+            @Override
+            protected boolean fetch() throws Exception {
+                while (reader.nextLine()) {
+                    count++;
+                    if (count > maxRows) {
+                        throw new SheetException("Maximum rows allowed is : " + maxRows);
+                    }
+                    if (progress != null) {
+                        progress.process(count);
+                    }
+                    try {
+                        parse(reader.buffer(), reader.lineStart(), reader.lineEnd(), dataRow, count);
+                        setCurrent(read(dataRow));
+                        return true;
+                    } catch (Exception e) {
+                        errors.add(new RowError(count, e.getMessage()));
+                    }
+                }
+                return false;
             }
-            if (progress != null) {
-                progress.process(count);
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
             }
-            try {
-                parse(line, dataRow);
-                T t = read(dataRow);
-                pagedList.add(t);
-            } catch (Exception e) {
-                errors.add(new RowError(count, e.getMessage()));
+        };
+    }
+
+    /**
+     * Read the columns of a schema into a columnar table, without mapping rows through read(DataRow). Lines are kept
+     * as buffers and only the columns of the schema are parsed. Rows which fail to parse are reported in getErrors()
+     *
+     * @param is     InputStream from which data is to be read
+     * @param schema Columns to read and the types to store them as
+     * @return Table of the rows read
+     */
+    @Override
+    public ColumnTable readTable(InputStream is, TableSchema schema) throws Exception {
+        openReader(is);
+        try {
+            ColumnTable table = new ColumnTable(schema);
+            int[] indices = table.bind(headerMap);
+            DataRow dataRow = newDataRow(true);
+            while (reader.nextLine()) {
+                count++;
+                if (count > maxRows) {
+                    throw new SheetException("Maximum rows allowed is : " + maxRows);
+                }
+                if (progress != null) {
+                    progress.process(count);
+                }
+                try {
+                    parse(reader.buffer(), reader.lineStart(), reader.lineEnd(), dataRow, count);
+                    table.append(dataRow, indices);
+                } catch (Exception e) {
+                    errors.add(new RowError(count, e.getMessage()));
+                }
             }
+            table.trim();
+            return table;
+        } finally {
+            reader.close();
         }
-        data = pagedList.getAll();
-        reader.close();
     }
 
     /**
@@ -117,31 +295,59 @@ public abstract class AbstractDataFile<T> implements IDataFile<T> {
      */
     @Override
     public void write(OutputStream os) throws IOException {
-        writer = new BufferedWriter(new OutputStreamWriter(os));
-        count = 0;
+        try (RowWriter<T> rowWriter = openWriter(os)) {
+            rowWriter.appendAll(data);
+        }
+    }
+
+    /**
+     * Write the headers onto an OutputStream and return a writer appending rows after them. The writer must be
+     * closed once done, which also closes the stream
+     *
+     * @param os OutputStream on which to write data
+     * @return Writer of the rows
+     */
+    @Override
+    public RowWriter<T> openWriter(OutputStream os) throws IOException {
+        LineWriter writer = new LineWriter(getWriteCompression().compress(os, compressionThreads), writeBufferSize);
         // Write headers
         headerMap = new HashMap<>();
         String[] headers = getHeaders();
         for (int i = 0; i < headers.length; i++) {
             headerMap.put(headers[i], i);
         }
-        String line = String.join(delimValue, headers);
-        writer.write(line);
+        // Handles of columns which are not written stay unbound
+        columns.bind(headerMap);
+        writer.write(String.join(delimValue, headers));
 
-        // Write rows
         DataRow r = new DataRow(headerMap);
         r.setTokens(new String[headerMap.size()]);
-        for (T t : data) {
-            count++;
-            write(r, t);
-            line = join(r.getTokens());
-            writer.write(newlineValue);
-            writer.write(line);
-            if (progress != null) {
-                progress.process(count);
+        return new RowWriter<T>(progress) {
+
+            @Override
+            protected void writeRow(T t) throws IOException {
+                write(r, t);
+                writer.write(newlineValue);
+                for (int i = 0; i < headers.length; i++) {
+                    if (i != 0) {
+                        writer.write(delimValue);
+                    }
+                    r.write(i, writer, nullValue);
+                }
             }
-        }
-        writer.close();
+
+            @Override
+            protected void closeOutput() throws IOException {
+                writer.close();
+            }
+        };
+    }
+
+    /**
+     * @return Format of written output, explicitly set or implied by the file extension
+     */
+    private Compression getWriteCompression() {
+        return compression != null ? compression : Compression.fromFileName(fileExtension);
     }
 
     @Override
@@ -164,6 +370,16 @@ public abstract class AbstractDataFile<T> implements IDataFile<T> {
     }
 
 
+    /**
+     * Resolve the column handles against the header which was read
+     */
+    private void bindColumns() throws SheetException {
+        Set<String> missing = columns.bind(headerMap);
+        if (!missing.isEmpty()) {
+            throw new SheetException(String.join(",", missing) + " are not found in the file");
+        }
+    }
+
     /**
      * Reads and Maps the first line of the input file as header. Separates tokens based on delimValues
      * Creates a Mapping, stored in "headerMap", from the header token to an integer index
@@ -172,12 +388,11 @@ public abstract class AbstractDataFile<T> implements IDataFile<T> {
      */
     private Set<String> readHeaders() throws SheetException, IOException {
         headerMap = new HashMap<>();
-        String line = reader.readLine();
-        if (line == null) {
+        if (!reader.nextLine()) {
             throw new SheetException("Unable to read file");
         }
 
-        String[] tokens = line.split(delimValue);
+        String[] tokens = trimTrailingEmpty(tokenizer.splitAll(reader.buffer(), reader.lineStart(), reader.lineEnd()));
         for (int i = 0; i < tokens.length; i++) {
             if (headerMap.keySet().contains(tokens[i]))
                 throw new SheetException(tokens[i] + " correspond to multiple columns");
@@ -187,43 +402,189 @@ public abstract class AbstractDataFile<T> implements IDataFile<T> {
     }
 
     /**
-     * Parse input line based on delimValue. Replaces strings matching nullValue with 'null'
-     * Saves the tokenized list and count of lines into data members of DataRow object
+     * Open a reader over an input stream, then read, validate and bind its headers
      *
-     * @param line Input line to be parse
-     * @param r    DataRow to be used for parsing
-     * @return true if parsed without errors, false otherwise
+     * @param is InputStream from which data is to be read
      */
-    private void parse(String line, DataRow r) throws SheetException {
-        String[] tokens = line.split(delimValue, -1);
-        for (int i = 0; i < tokens.length; i++) {
-            if (nullValue.equalsIgnoreCase(tokens[i])) {
-                tokens[i] = null;
+    private void openReader(InputStream is) throws Exception {
+        Set<String> expectedHeaderSet = new HashSet<>(Arrays.asList(getHeaders()));
+        errors = new PagedList<>();
+        count = 0;
+        readInterner = interner == null ? new StringInterner() : interner;
+        reader = new LineReader(new InputStreamReader(Compression.decompress(is), StandardCharsets.UTF_8));
+        tokenizer = new Tokenizer(delimValue, nullValue);
+
+        // Read headers. If no headers, don't read further
+        try {
+            Set<String> headers = readHeaders();
+            if (!(expectedHeaderSet.isEmpty())) {
+                validateHeaders(headers, expectedHeaderSet);
             }
+            bindColumns();
+        } catch (Exception e) {
+            reader.close();
+            throw e;
         }
-        if (tokens.length != headerMap.size()) {
-            throw new SheetException("Record length does not match that of the header");
-        }
+    }
+
+    /**
+     * Return a cursor which reads lines on the calling thread and parses and maps them on a pool of threads
+     *
+     * @return Cursor over the parsed rows
+     */
+    private RowCursor<T> openParallelCursor() {
+        return new ParallelRowCursor<String, T>(parallelism, maxRows, progress, errors) {
 
-        r.setTokens(tokens);
-        r.setNumber(count);
+            @Override
+            protected String readRaw() throws IOException {
+                return reader.nextLine() ? reader.line() : null;
+            }
+
+            @Override
+            protected RowMapper<String, T> newMapper() {
+                DataRow dataRow = newDataRow(lazyColumns);
+                return new RowMapper<String, T>() {
+                    private char[] chars = new char[256];
+
+                    @Override
+                    public T map(String line, int row) throws Exception {
+                        int length = line.length();
+                        if (chars.length < length) {
+                            chars = new char[length];
+                        }
+                        line.getChars(0, length, chars, 0);
+                        parse(chars, 0, length, dataRow, row);
+                        return read(dataRow);
+                    }
+                };
+            }
+
+            @Override
+            protected void closeInput() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * Map a file and return a cursor which parses its segments on a pool of threads
+     *
+     * @param file File from which data is to be read
+     * @return Cursor over the parsed rows
+     */
+    private RowCursor<T> openSegmentCursor(File file) throws Exception {
+        Set<String> expectedHeaderSet = new HashSet<>(Arrays.asList(getHeaders()));
+        errors = new PagedList<>();
+        count = 0;
+        readInterner = interner == null ? new StringInterner() : interner;
+        tokenizer = new Tokenizer(delimValue, nullValue);
+        MappedFile mapped = new MappedFile(file);
+        ExecutorService pool = ThreadPools.newFixedPool(parallelism, "sheet-reader");
+        try {
+            long headerEnd = mapped.skipLine(0);
+            reader = new LineReader(new InputStreamReader(mapped.stream(0, headerEnd), StandardCharsets.UTF_8));
+            Set<String> headers = readHeaders();
+            if (!(expectedHeaderSet.isEmpty())) {
+                validateHeaders(headers, expectedHeaderSet);
+            }
+            bindColumns();
+
+            // Count lines of all segments first, so rows are mapped with their absolute row numbers
+            MappedFile.Segments segments = mapped.split(headerEnd, parallelism);
+            List<Future<Integer>> lineCounts = new ArrayList<>();
+            for (int i = 0; i < segments.count(); i++) {
+                long start = segments.bounds[i];
+                long end = segments.bounds[i + 1];
+                lineCounts.add(pool.submit(() -> mapped.countLines(start, end)));
+            }
+            List<Callable<RowBatch<T>>> tasks = new ArrayList<>();
+            int base = 0;
+            for (int i = 0; i < segments.count(); i++) {
+                long start = segments.bounds[i];
+                long end = segments.bounds[i + 1];
+                int first = base;
+                int lines = ThreadPools.await(lineCounts.get(i));
+                tasks.add(() -> mapSegment(mapped, start, end, first, lines));
+                base += lines;
+            }
+            return new SegmentCursor<>(pool, tasks, parallelism * 2, mapped, maxRows, progress, errors);
+        } catch (Exception e) {
+            pool.shutdownNow();
+            mapped.close();
+            throw e;
+        }
     }
 
     /**
-     * Join a list o strings into a single string, separated by delimValue
+     * Parse and map the lines in [start, end) of a mapped file
      *
-     * @param arr List of Strings to be joined
-     * @return Concatenated string
+     * @param base  Number of rows before this segment
+     * @param lines Number of lines in this segment
+     * @return Batch of mapped rows
      */
-    private String join(String[] arr) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < arr.length; i++) {
-            if (i != 0) {
-                sb.append(delimValue);
+    private RowBatch<T> mapSegment(MappedFile mapped, long start, long end, int base, int lines) throws IOException {
+        // No need to map rows past maxRows, the cursor fails once it reaches them
+        long limit = maxRows + 1L - base;
+        RowBatch<T> batch = new RowBatch<>((int) Math.max(0, Math.min(lines, limit)));
+        DataRow dataRow = newDataRow(lazyColumns);
+        try (LineReader lineReader = new LineReader(
+                new InputStreamReader(mapped.stream(start, end), StandardCharsets.UTF_8))) {
+            while (batch.size() < limit && lineReader.nextLine()) {
+                try {
+                    parse(lineReader.buffer(), lineReader.lineStart(), lineReader.lineEnd(), dataRow,
+                            base + batch.size() + 1);
+                    batch.add(read(dataRow));
+                } catch (Exception e) {
+                    batch.addError(e.getMessage());
+                }
             }
-            sb.append(arr[i] == null ? nullValue : arr[i]);
         }
-        return sb.toString();
+        return batch;
+    }
+
+    private DataRow newDataRow(boolean lazy) {
+        DataRow dataRow = new DataRow(headerMap);
+        dataRow.setTokens(new String[headerMap.size()]);
+        dataRow.setInterner(readInterner);
+        dataRow.setDateMemo(dateMemo);
+        if (lazy) {
+            dataRow.setLazy(tokenizer);
+        }
+        return dataRow;
+    }
+
+    /**
+     * Drop empty tokens from the end of a header line, as String.split() would
+     *
+     * @param tokens Tokens of the header line
+     * @return Tokens without trailing empty values
+     */
+    private static String[] trimTrailingEmpty(String[] tokens) {
+        int n = tokens.length;
+        while (n > 1 && tokens[n - 1].isEmpty()) {
+            n--;
+        }
+        return n == tokens.length ? tokens : Arrays.copyOf(tokens, n);
+    }
+
+    /**
+     * Parse a line based on delimValue. Replaces strings matching nullValue with 'null'
+     * Tokens are written into the token array of the DataRow, which is reused for every line, so subclasses must
+     * copy getTokens() if they need to keep it beyond read(DataRow). With lazy columns only the field boundaries are
+     * found here, and tokens are cut when read(DataRow) accesses them
+     *
+     * @param buf    Buffer holding the line
+     * @param start  Index of the first character of the line
+     * @param end    Index just past the last character of the line
+     * @param r      DataRow to be used for parsing
+     * @param number Row number of the line
+     */
+    private void parse(char[] buf, int start, int end, DataRow r, int number) throws SheetException {
+        int n = r.isLazy() ? r.setLine(buf, start, end) : tokenizer.split(buf, start, end, r.getTokens());
+        if (n != headerMap.size()) {
+            throw new SheetException("Record length does not match that of the header");
+        }
+        r.setNumber(number);
     }
 
 }
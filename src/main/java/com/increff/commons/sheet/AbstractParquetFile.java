@@ -2,23 +2,26 @@ package com.increff.commons.sheet;
 
 import java.io.*;
 import java.lang.reflect.ParameterizedType;
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.reflect.ReflectData;
-import org.apache.hadoop.conf.Configuration;
 import org.apache.parquet.avro.AvroParquetReader;
 import org.apache.parquet.avro.AvroParquetWriter;
-import org.apache.parquet.avro.AvroSchemaConverter;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.hadoop.ParquetFileReader;
 import org.apache.parquet.hadoop.ParquetFileWriter;
 import org.apache.parquet.hadoop.ParquetReader;
 import org.apache.parquet.hadoop.ParquetWriter;
-import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.OutputFile;
 import org.apache.parquet.schema.MessageType;
 import org.apache.parquet.schema.OriginalType;
 import org.apache.parquet.schema.PrimitiveType;
@@ -32,13 +35,17 @@ public abstract class AbstractParquetFile<T> implements IDataFile<T> {
     private String fileExtension = ".parquet";
     private int count;
     private ParquetReader<GenericRecord> reader;
-    private ParquetWriter<GenericRecord> writer;
-    private Schema schema;
-    private Set<String> binaryFields;
-    private Set<String> dateTimeFields;
+    private String[] columns;
+    private ParquetFilter filter;
+    private boolean directRead;
+    private boolean reuseRecords;
+    private StringInterner interner;
+    private int parallelism = 1;
+    private int sliceRows = 250_000;
+    private ParquetWriterProfile writerProfile = ParquetWriterProfile.defaults();
     private IProgressMonitor progress;
     private PagedList<RowError> errors;
-    private ArrayList<T> data;
+    private List<T> data;
 
     /**
      * @param s This function takes a string 's' as a delimeter.
@@ -67,18 +74,100 @@ public abstract class AbstractParquetFile<T> implements IDataFile<T> {
         this.newlineValue = s;
     }
 
+    /**
+     * Read records straight into a reused ParquetRow with per-column converters and map them with read(ParquetRow),
+     * skipping the intermediate Avro record, boxing and string conversions. Reads fail with a SheetException before
+     * any row is read if the class does not return true from supportsDirectRead()
+     *
+     * @param directRead true to read through read(ParquetRow)
+     */
+    public void setDirectRead(boolean directRead) {
+        this.directRead = directRead;
+    }
+
+    /**
+     * Write all rows through a single record which is cleared before each row, instead of a new record per row.
+     * write(GenericRecord, T) must then not keep a reference to the record it is given
+     *
+     * @param reuseRecords true to reuse one record while writing
+     */
+    public void setReuseRecords(boolean reuseRecords) {
+        this.reuseRecords = reuseRecords;
+    }
+
+    /**
+     * Share equal strings read from the file through the given interner. Values are looked up straight from their
+     * UTF-8 bytes, so repeated values of low cardinality columns are neither decoded nor kept more than once. The
+     * interner may be held by the file class or shared by the reads of a load
+     *
+     * @param interner Interner to use, null to decode every value into its own string
+     */
+    public void setInterner(StringInterner interner) {
+        this.interner = interner;
+    }
+
+    /**
+     * Read and write on a pool of threads.
+     * Reads decode and map each row group of a file on its own thread. Rows, row numbers and errors are reported in
+     * file order, as in a sequential read; with a filter, ParquetRow.getNumber() counts all rows of the preceding row
+     * groups rather than only the matching ones.
+     * Writes collect rows into slices of sliceRows rows, each encoded and compressed as complete row groups by one
+     * thread, and the row groups are appended to the output in order.
+     * With more than one thread, read and write hooks are called concurrently and must not modify shared state
+     *
+     * @param parallelism Number of threads used for reading and writing. Defaults to 1 (sequential)
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param sliceRows Number of rows handed to a thread at a time by parallel writes. Each slice holds at least one
+     *                  row group, so slices should hold about as many rows as fit in a row group. Defaults to 250000
+     */
+    public void setSliceRows(int sliceRows) {
+        this.sliceRows = sliceRows;
+    }
+
+    /**
+     * @param writerProfile Codec, sizes and encodings to write files with. Defaults to ParquetWriterProfile.defaults()
+     */
+    public void setWriterProfile(ParquetWriterProfile writerProfile) {
+        this.writerProfile = writerProfile;
+    }
+
+    /**
+     * Only read rows matching the filter. Row groups and pages which cannot match are skipped using their statistics,
+     * and the remaining rows are filtered by the reader, so maxRows, row numbers and progress count matching rows only.
+     * Filtered columns must be among the columns being read
+     *
+     * @param filter Filter to apply, null to read all rows
+     */
+    public void setFilter(ParquetFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Restrict reads to the given columns. Columns which are not requested are neither fetched nor decoded
+     *
+     * @param columns Names of the columns to read
+     */
+    public void setColumns(String... columns) {
+        this.columns = columns;
+    }
+
     public List<RowError> getErrors() {
-        return errors.getAll();
+        return errors;
     }
 
     // Public methods
     @Override
-    public void setData(ArrayList<T> data) {
+    public void setData(List<T> data) {
         this.data = data;
     }
 
     @Override
-    public ArrayList<T> getData() {
+    public List<T> getData() {
         return data;
     }
 
@@ -89,48 +178,347 @@ public abstract class AbstractParquetFile<T> implements IDataFile<T> {
      */
     @Override
     public void read(InputStream is) throws Exception {
+        PagedList<T> pagedList = new PagedList<>();
+        read(is, pagedList::add);
+        data = pagedList;
+    }
+
+    /**
+     * Read and parse records of data from an input stream, handing each row to the consumer as soon as it is parsed.
+     * Rows are not stored, so getData() is not populated by this method
+     *
+     * @param is       InputStream from which data is to be read
+     * @param consumer Consumer which receives each successfully parsed row
+     */
+    @Override
+    public void read(InputStream is, IRowConsumer<T> consumer) throws Exception {
+        try (RowCursor<T> cursor = openCursor(is)) {
+            cursor.drain(consumer);
+        }
+    }
 
+    /**
+     * Read and parse a local file. The file is read with positional reads instead of being buffered in memory
+     *
+     * @param file File from which data is to be read
+     */
+    @Override
+    public void read(File file) throws Exception {
         PagedList<T> pagedList = new PagedList<>();
-        Schema expectedSchema = computeSchema();
+        try (RowCursor<T> cursor = openCursor(new ParquetLocalFileReader(file))) {
+            cursor.drain(pagedList::add);
+        }
+        data = pagedList;
+    }
+
+    /**
+     * Open a parquet reader over an input stream and return a cursor over its rows. The schema is validated against
+     * the footer of the file. The cursor must be closed once done
+     *
+     * @param is InputStream from which data is to be read
+     * @return Cursor over the parsed rows
+     */
+    @Override
+    public RowCursor<T> openCursor(InputStream is) throws Exception {
+        return openCursor(new ParquetStreamReader(is));
+    }
+
+    /**
+     * Open a parquet reader over an input file and return a cursor over its rows
+     *
+     * @param inputFile File from which data is to be read
+     * @return Cursor over the parsed rows
+     */
+    private RowCursor<T> openCursor(InputFile inputFile) throws Exception {
+        if (directRead && !supportsDirectRead()) {
+            throw new SheetException("Direct read is not implemented for " + getClass().getName());
+        }
         errors = new PagedList<>();
         count = 0;
 
-        ParquetStreamReader parquetStream = new ParquetStreamReader(is);
+        // Validate against the footer, as records only carry the projected columns
+        ParquetMetadata footer = readFooter(inputFile);
+        MessageType fileSchema = footer.getFileMetaData().getSchema();
+        ParquetCodec.ReadPlan plan = codec().readPlan(fileSchema, getColumns());
+        FilterCompat.Filter rowFilter = computeFilter(fileSchema, getColumns());
+        if (parallelism > 1 && footer.getBlocks().size() > 1) {
+            return openParallelCursor(inputFile, footer.getBlocks(), plan, rowFilter);
+        }
+        if (directRead) {
+            return openDirectCursor(ParquetRowReadSupport.builder(inputFile, plan.getProjection(), interner)
+                    .withFilter(rowFilter)
+                    .build());
+        }
 
-        ParquetReader<GenericRecord> reader = AvroParquetReader.<GenericRecord>builder(parquetStream)
+        reader = AvroParquetReader.<GenericRecord>builder(inputFile)
                 .disableCompatibility()
+                .withConf(plan.getConf())
+                .withFilter(rowFilter)
                 .build();
 
-        GenericRecord record;
+        return new RowCursor<T>() {
+
+            @Override
+            protected boolean fetch() throws Exception {
+                GenericRecord record;
+                while ((record = reader.read()) != null) {
+                    count++;
+                    if (count > maxRows) {
+                        throw new SheetException("Maximum rows allowed is : " + maxRows);
+                    }
+                    if (progress != null) {
+                        progress.process(count);
+                    }
+
+                    try {
+                        plan.decode(record, interner);
+                        setCurrent(read(record));
+                        return true;
+                    } catch (Exception e) {
+                        errors.add(new RowError(count, e.getMessage()));
+                    }
+                }
+                return false;
+            }
 
-        while ((record = reader.read()) != null) {
-            if(count == 0){
-                readSchema(record);
-                validateHeaders(schema,expectedSchema);
+            @Override
+            public void close() throws IOException {
+                reader.close();
             }
+        };
+    }
 
-            count++;
-            if (count > maxRows) {
-                throw new SheetException("Maximum rows allowed is : " + maxRows);
+    /**
+     * Return a cursor which reads and maps the row groups of a file on a pool of threads. Each row group is read by
+     * its own reader restricted to the byte range of the row group, and the rows are delivered in file order. At
+     * most twice parallelism row groups are read ahead of the consumer
+     *
+     * @param inputFile File from which data is to be read
+     * @param blocks    Row groups of the file, from its footer
+     * @return Cursor over the parsed rows
+     */
+    private RowCursor<T> openParallelCursor(InputFile inputFile, List<BlockMetaData> blocks,
+                                            ParquetCodec.ReadPlan plan, FilterCompat.Filter rowFilter) {
+        ExecutorService pool = ThreadPools.newFixedPool(parallelism, "parquet-reader");
+        List<Callable<RowBatch<T>>> tasks = new ArrayList<>();
+        long base = 0;
+        for (BlockMetaData block : blocks) {
+            long start = block.getStartingPos();
+            long end = start + block.getCompressedSize();
+            long first = base;
+            int rows = (int) block.getRowCount();
+            tasks.add(() -> readRowGroup(inputFile, start, end, first, rows, plan, rowFilter));
+            base += rows;
+        }
+        return new SegmentCursor<>(pool, tasks, parallelism * 2, () -> {
+        }, maxRows, progress, errors);
+    }
+
+    /**
+     * Read and map the row group in [start, end) of a file
+     *
+     * @param base Number of rows before this row group
+     * @param rows Number of rows in this row group
+     * @return Batch of mapped rows
+     */
+    private RowBatch<T> readRowGroup(InputFile inputFile, long start, long end, long base, int rows,
+                                     ParquetCodec.ReadPlan plan, FilterCompat.Filter rowFilter) throws IOException {
+        // No need to map rows past maxRows, the cursor fails once it reaches them. With a filter the number of
+        // matching rows before this row group is not known, so all of them are mapped
+        long limit = rowFilter == FilterCompat.NOOP ? maxRows + 1L - base : Long.MAX_VALUE;
+        RowBatch<T> batch = new RowBatch<>((int) Math.max(0, Math.min(rows, limit)));
+        if (directRead) {
+            try (ParquetReader<ParquetRow> rowReader = ParquetRowReadSupport.builder(inputFile, plan.getProjection(),
+                    interner)
+                    .withFilter(rowFilter)
+                    .withFileRange(start, end)
+                    .build()) {
+                ParquetRow row;
+                while (batch.size() < limit && (row = rowReader.read()) != null) {
+                    try {
+                        row.rowIndex = (int) (base + batch.size() + 1);
+                        batch.add(read(row));
+                    } catch (Exception e) {
+                        batch.addError(e.getMessage());
+                    }
+                }
+            }
+            return batch;
+        }
+        try (ParquetReader<GenericRecord> recordReader = AvroParquetReader.<GenericRecord>builder(inputFile)
+                .disableCompatibility()
+                .withConf(plan.getConf())
+                .withFilter(rowFilter)
+                .withFileRange(start, end)
+                .build()) {
+            GenericRecord record;
+            while (batch.size() < limit && (record = recordReader.read()) != null) {
+                try {
+                    plan.decode(record, interner);
+                    batch.add(read(record));
+                } catch (Exception e) {
+                    batch.addError(e.getMessage());
+                }
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Return a cursor which maps rows from ParquetRows, without going through Avro records
+     *
+     * @param rowReader Reader producing ParquetRows
+     * @return Cursor over the parsed rows
+     */
+    private RowCursor<T> openDirectCursor(ParquetReader<ParquetRow> rowReader) {
+        return new RowCursor<T>() {
+
+            @Override
+            protected boolean fetch() throws Exception {
+                ParquetRow row;
+                while ((row = rowReader.read()) != null) {
+                    count++;
+                    if (count > maxRows) {
+                        throw new SheetException("Maximum rows allowed is : " + maxRows);
+                    }
+                    if (progress != null) {
+                        progress.process(count);
+                    }
+
+                    try {
+                        row.rowIndex = count;
+                        setCurrent(read(row));
+                        return true;
+                    } catch (Exception e) {
+                        errors.add(new RowError(count, e.getMessage()));
+                    }
+                }
+                return false;
             }
-            if (progress != null) {
-                progress.process(count);
+
+            @Override
+            public void close() throws IOException {
+                rowReader.close();
             }
+        };
+    }
+
+    /**
+     * Read the columns of a schema into a columnar table, without mapping rows through read(GenericRecord). Only
+     * the columns of the schema are fetched, and values are copied from the column readers without Avro records
+     *
+     * @param is     InputStream from which data is to be read
+     * @param schema Columns to read and the types to store them as
+     * @return Table of the rows read
+     */
+    @Override
+    public ColumnTable readTable(InputStream is, TableSchema schema) throws Exception {
+        return readTable(new ParquetStreamReader(is), schema);
+    }
 
-            try {
-                readBinaryToString(record);
-                readEpochToDatetime(record);
-                T t = read(record);
-                pagedList.add(t);
-            } catch (Exception e) {
-                errors.add(new RowError(count, e.getMessage()));
+    /**
+     * Read the columns of a schema from a local file into a columnar table. The file is read in place rather than
+     * copied into memory, and with parallelism greater than 1 its row groups are read concurrently
+     *
+     * @param file   File from which data is to be read
+     * @param schema Columns to read and the types to store them as
+     * @return Table of the rows read
+     */
+    @Override
+    public ColumnTable readTable(File file, TableSchema schema) throws Exception {
+        return readTable(new ParquetLocalFileReader(file), schema);
+    }
+
+    private ColumnTable readTable(InputFile inputFile, TableSchema schema) throws Exception {
+        errors = new PagedList<>();
+        count = 0;
+
+        ParquetMetadata footer = readFooter(inputFile);
+        MessageType fileSchema = footer.getFileMetaData().getSchema();
+        String[] names = schema.getNames();
+        ParquetCodec.ReadPlan plan = codec().readPlan(fileSchema, names);
+        int[] indices = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            checkTableType(plan.getProjection().getType(i).asPrimitiveType(), schema.getType(i));
+            indices[i] = i;
+        }
+        FilterCompat.Filter rowFilter = computeFilter(fileSchema, names);
+
+        List<BlockMetaData> blocks = footer.getBlocks();
+        ColumnTable table = new ColumnTable(schema);
+        // Without a filter the footer gives the row count, so a file over the limit fails before it is read and the
+        // columns are allocated once at their final size
+        if (rowFilter == FilterCompat.NOOP) {
+            long rows = 0;
+            for (BlockMetaData block : blocks) {
+                rows += block.getRowCount();
             }
+            if (rows > maxRows) {
+                throw new SheetException("Maximum rows allowed is : " + maxRows);
+            }
+            table.ensureCapacity((int) rows);
+        }
+        if (parallelism <= 1 || blocks.size() <= 1) {
+            try (ParquetReader<ParquetRow> rowReader = ParquetRowReadSupport.builder(inputFile, plan.getProjection(),
+                    interner)
+                    .withFilter(rowFilter)
+                    .build()) {
+                ParquetRow row;
+                while ((row = rowReader.read()) != null) {
+                    countRow();
+                    table.append(row, indices);
+                }
+            }
+            table.trim();
+            return table;
         }
-        data = pagedList.getAll();
-        reader.close();
 
+        ExecutorService pool = ThreadPools.newFixedPool(parallelism, "parquet-reader");
+        try {
+            List<Future<ColumnTable>> groups = new ArrayList<>();
+            for (BlockMetaData block : blocks) {
+                long start = block.getStartingPos();
+                long end = start + block.getCompressedSize();
+                groups.add(pool.submit(() -> {
+                    ColumnTable group = new ColumnTable(schema);
+                    try (ParquetReader<ParquetRow> rowReader = ParquetRowReadSupport.builder(inputFile,
+                            plan.getProjection(), interner).withFilter(rowFilter).withFileRange(start, end).build()) {
+                        ParquetRow row;
+                        while ((row = rowReader.read()) != null) {
+                            group.append(row, indices);
+                        }
+                    }
+                    return group;
+                }));
+            }
+            for (int g = 0; g < groups.size(); g++) {
+                ColumnTable rowGroup = ThreadPools.await(groups.get(g));
+                // Release each group once appended, so that only the groups still pending are held
+                groups.set(g, null);
+                for (int i = 0; i < rowGroup.size(); i++) {
+                    countRow();
+                }
+                table.appendAll(rowGroup);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        table.trim();
+        return table;
     }
 
+    /**
+     * Count a row read into a table, enforcing maxRows and reporting progress
+     */
+    private void countRow() throws SheetException {
+        count++;
+        if (count > maxRows) {
+            throw new SheetException("Maximum rows allowed is : " + maxRows);
+        }
+        if (progress != null) {
+            progress.process(count);
+        }
+    }
 
     /**
      * Write contents of the stored 'data' PagedList onto an OutputStream
@@ -139,31 +527,131 @@ public abstract class AbstractParquetFile<T> implements IDataFile<T> {
      */
     @Override
     public void write(OutputStream os) throws IOException {
+        try (RowWriter<T> rowWriter = openWriter(os)) {
+            rowWriter.appendAll(data);
+        }
+    }
 
-        Schema schema = computeSchema();
+    /**
+     * Open a parquet writer over an OutputStream and return a writer appending rows to it. Rows are buffered into
+     * row groups by the parquet writer, and the footer is written when the writer is closed. With parallelism, rows
+     * are collected into slices which are encoded and compressed on a pool of threads
+     *
+     * @param os OutputStream on which to write data
+     * @return Writer of the rows
+     */
+    @Override
+    public RowWriter<T> openWriter(OutputStream os) throws IOException {
+        if (parallelism > 1) {
+            return openParallelWriter(os);
+        }
+        RecordSink sink = new RecordSink(new ParquetStreamWriter(os));
+        return new RowWriter<T>(progress) {
 
-        ParquetStreamWriter out = new ParquetStreamWriter(os);
-        writer = AvroParquetWriter.<GenericRecord>builder(out)
-                .withSchema(schema)
-                .withDataModel(ReflectData.get())
-                .withConf(new Configuration())
-                .withCompressionCodec(CompressionCodecName.SNAPPY)
-                .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
-                .build();
+            @Override
+            protected void writeRow(T t) throws IOException {
+                sink.write(t);
+            }
 
-        count = 0;
-        for (T t : data) {
-            count++;
-            GenericData.Record record = new GenericData.Record(schema);
-            write(record, t);
-            convertBinaryToUTF8(record);
-            convertDateTimeToEpoch(record);
-            writer.write(record);
-            if (progress != null) {
-                progress.process(count);
+            @Override
+            protected void closeOutput() throws IOException {
+                sink.close();
+            }
+        };
+    }
+
+    /**
+     * Return a writer which hands slices of sliceRows rows to a pool of threads. Each slice is written as a parquet
+     * file in memory, and the row groups of the slices are appended to the output in order
+     *
+     * @param os OutputStream on which to write data
+     * @return Writer of the rows
+     */
+    private RowWriter<T> openParallelWriter(OutputStream os) {
+        ParquetSliceWriter slices = new ParquetSliceWriter(new ParquetStreamWriter(os),
+                writerProfile.getRowGroupSize(), parallelism);
+        return new RowWriter<T>(progress) {
+            private List<T> slice = new ArrayList<>();
+
+            @Override
+            protected void writeRow(T t) throws IOException {
+                slice.add(t);
+                if (slice.size() >= sliceRows) {
+                    submit();
+                }
+            }
+
+            @Override
+            protected void closeOutput() throws IOException {
+                try {
+                    // An empty slice still provides the schema and metadata of an empty file
+                    if (!slice.isEmpty() || !slices.isSubmitted()) {
+                        submit();
+                    }
+                    slices.finish();
+                } finally {
+                    slices.close();
+                }
             }
+
+            private void submit() throws IOException {
+                List<T> rows = slice;
+                slice = new ArrayList<>();
+                slices.submit(() -> {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (RecordSink sink = new RecordSink(new ParquetStreamWriter(bytes))) {
+                        for (T t : rows) {
+                            sink.write(t);
+                        }
+                    }
+                    return bytes.toByteArray();
+                });
+            }
+        };
+    }
+
+    /**
+     * Maps rows to records with write(GenericRecord, T) and writes them with a parquet writer configured by the
+     * writer profile
+     */
+    private class RecordSink implements Closeable {
+        private final ParquetWriter<GenericRecord> writer;
+        private final Schema schema;
+        private final ParquetCodec.RecordEncoder encoder;
+        private final GenericData.Record reused;
+        private final int fields;
+
+        RecordSink(OutputFile out) throws IOException {
+            ParquetCodec codec = codec();
+            this.schema = codec.getSchema();
+            this.writer = writerProfile.apply(AvroParquetWriter.<GenericRecord>builder(out))
+                    .withSchema(schema)
+                    .withDataModel(ReflectData.get())
+                    .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+                    .build();
+            this.encoder = codec.newEncoder();
+            this.reused = reuseRecords ? new GenericData.Record(schema) : null;
+            this.fields = schema.getFields().size();
+        }
+
+        void write(T t) throws IOException {
+            GenericData.Record record = reused;
+            if (record != null) {
+                for (int i = 0; i < fields; i++) {
+                    record.put(i, null);
+                }
+            } else {
+                record = new GenericData.Record(schema);
+            }
+            AbstractParquetFile.this.write(record, t);
+            encoder.encode(record);
+            writer.write(record);
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
         }
-        writer.close();
     }
 
     @Override
@@ -171,11 +659,48 @@ public abstract class AbstractParquetFile<T> implements IDataFile<T> {
         this.progress = progress;
     }
 
+    /**
+     * Map a row read without Avro. Used instead of read(GenericRecord) when direct reads are enabled. As on the Avro
+     * path, null strings are returned as empty strings
+     *
+     * @param row Reused row holding the values of the current record
+     * @return Mapped row, null if the class does not support direct reads
+     */
+    protected T read(ParquetRow row) throws Exception {
+        return null;
+    }
+
+    /**
+     * Subclasses overriding read(ParquetRow) must also override this method to return true
+     *
+     * @return Whether rows can be mapped with read(ParquetRow)
+     */
+    protected boolean supportsDirectRead() {
+        return false;
+    }
+
     // Subclasses must override these methods
     protected abstract T read(GenericRecord rec) throws Exception;
     protected abstract void write(GenericRecord rec, T t);
+
+    /**
+     * Schema of the file. It is compiled once per class, so it must not differ between instances
+     *
+     * @return Columns of the file
+     */
     protected abstract Type[] getSchema();
 
+    /**
+     * Columns to read from the file. Only these columns are fetched and decoded, so records passed to
+     * read(GenericRecord) contain only these fields. Defaults to the columns set with setColumns(), or else the
+     * fields of getSchema(). Subclasses reading a few columns of a wide file can override this
+     *
+     * @return Names of the columns to read
+     */
+    protected String[] getColumns() {
+        return columns != null ? columns : codec().getColumns();
+    }
+
     protected static void validateHeaders(Schema incomingSchema, Schema expectedSchema) throws SheetException {
 
         Map<String, Schema> fieldInfo1 = extractFieldInfo(incomingSchema);
@@ -212,64 +737,66 @@ public abstract class AbstractParquetFile<T> implements IDataFile<T> {
     }
 
 
-    private Schema computeSchema(){
-        MessageType parquetSchema = new MessageType(getParameterClass().getSimpleName(), getSchema());
-        Schema avroSchema = new AvroSchemaConverter().convert(parquetSchema);
-
-        binaryFields = new HashSet<>();
-        dateTimeFields = new HashSet<>();
-
-        for(Type field: getSchema()){
-            if(field.asPrimitiveType().getPrimitiveTypeName().equals(PrimitiveType.PrimitiveTypeName.BINARY)){
-                binaryFields.add(field.getName());
-            } else if (field.getOriginalType()!=null &&
-                    field.getOriginalType().equals(OriginalType.DATE)) {
-                dateTimeFields.add(field.getName());
-            }
+    private FilterCompat.Filter computeFilter(MessageType fileSchema, String[] columns) throws SheetException {
+        if (filter == null) {
+            return FilterCompat.NOOP;
         }
-
-        return avroSchema;
-    }
-
-
-    private void readSchema(GenericRecord record) {
-        schema = record.getSchema();
-    }
-
-    private void convertBinaryToUTF8(GenericRecord record){
-        for(String fieldName: binaryFields){
-            if(record.get(fieldName) != null){
-                record.put(fieldName, StandardCharsets.UTF_8.encode((String) record.get(fieldName)));
-            }
+        Set<String> missing = new HashSet<>(filter.getColumns());
+        missing.removeAll(Arrays.asList(columns));
+        if (!missing.isEmpty()) {
+            throw new SheetException("Filter columns " + String.join(",", missing) + " are not being read");
         }
+        return FilterCompat.get(filter.toPredicate(fileSchema));
     }
 
-    private void readBinaryToString(GenericRecord record){
-        for(String fieldName: binaryFields){
-
-            if(record.get(fieldName) == null){
-                record.put(fieldName, "");
-            }
-            else {
-                record.put(fieldName, StandardCharsets.UTF_8.decode((ByteBuffer) record.get(fieldName)).toString());
-            }
+    /**
+     * Check that a column of the file can be stored as the type declared for it in a table
+     *
+     * @param column Column of the file
+     * @param type   Type declared in the table schema
+     */
+    private static void checkTableType(PrimitiveType column, ColumnType type) throws SheetException {
+        PrimitiveType.PrimitiveTypeName physical = column.getPrimitiveTypeName();
+        boolean date = OriginalType.DATE.equals(column.getOriginalType());
+        boolean valid;
+        switch (type) {
+            case INT:
+            case DATE:
+                valid = physical == PrimitiveType.PrimitiveTypeName.INT32 && (type == ColumnType.DATE) == date;
+                break;
+            case LONG:
+                valid = !date && (physical == PrimitiveType.PrimitiveTypeName.INT32
+                        || physical == PrimitiveType.PrimitiveTypeName.INT64);
+                break;
+            case DOUBLE:
+                valid = physical == PrimitiveType.PrimitiveTypeName.DOUBLE
+                        || physical == PrimitiveType.PrimitiveTypeName.FLOAT;
+                break;
+            case BOOLEAN:
+                valid = physical == PrimitiveType.PrimitiveTypeName.BOOLEAN;
+                break;
+            default:
+                valid = physical == PrimitiveType.PrimitiveTypeName.BINARY;
+        }
+        if (!valid) {
+            throw new SheetException("Column '" + column.getName() + "' of type " + physical + " cannot be read as "
+                    + type);
         }
     }
 
-    private void convertDateTimeToEpoch(GenericRecord record) {
-        for(String fieldName: dateTimeFields){
-            if(record.get(fieldName) != null){
-                record.put(fieldName, ((LocalDate)record.get(fieldName)).toEpochDay());
-            }
+    private static ParquetMetadata readFooter(InputFile inputFile) throws IOException {
+        try (ParquetFileReader fileReader = ParquetFileReader.open(inputFile)) {
+            return fileReader.getFooter();
         }
     }
 
-    private void readEpochToDatetime(GenericRecord record) {
-        for(String fieldName: dateTimeFields){
-            if(record.get(fieldName) != null){
-                record.put(fieldName, LocalDate.ofEpochDay((int) record.get(fieldName)));
-            }
-        }
+    /**
+     * Return the codec compiled for this class. getSchema() is only called the first time a class is used
+     *
+     * @return Codec of this class
+     */
+    private ParquetCodec codec() {
+        return ParquetCodec.get(getClass(), () -> new MessageType(getParameterClass().getSimpleName(), getSchema()));
     }
 
     private Class<T> getParameterClass() {
@@ -10,11 +10,15 @@
  */
 
 package com.increff.commons.sheet;
+import com.opencsv.CSVParser;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 public abstract class AbstractTSVFile<T> implements IDataFile<T> {
 
@@ -23,13 +27,24 @@ public abstract class AbstractTSVFile<T> implements IDataFile<T> {
     private String nullValue = "null";
     private Integer maxRows = 1_00_000;
     private String fileExtension = ".tsv";
+    private int parallelism = 1;
+    private Compression compression;
+    private int compressionThreads = Compression.DEFAULT_THREADS;
+    private StringInterner interner;
+    private boolean dateMemo = true;
+    private StringInterner readInterner;
     private int count;
     private CSVReader reader;
     private BufferedWriter writer;
     private HashMap<String, Integer> headerMap;
+    /**
+     * Column handles of this file. Subclasses declare them as fields, e.g. columns.intCol("sku"), and read rows
+     * through them instead of looking up columns by name
+     */
+    protected final Columns columns = new Columns();
     private IProgressMonitor progress;
     private PagedList<RowError> errors;
-    private ArrayList<T> data;
+    private List<T> data;
 
     /**
      * @params This function takes a string 's' as a delimeter.
@@ -49,6 +64,58 @@ public abstract class AbstractTSVFile<T> implements IDataFile<T> {
         this.maxRows = maxRows;
     }
 
+    /**
+     * Map rows on a pool of threads. Rows, row numbers and errors are reported in input order, as in a sequential read.
+     * With more than one thread, read(DataRow) is called concurrently and must not modify shared state
+     *
+     * @param parallelism Number of threads used for mapping rows. Defaults to 1 (sequential)
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Compress written output in this format instead of the one implied by the file extension, e.g. ".tsv.gz" or
+     * ".tsv.zst". Reads detect the format from the first bytes of the input, whatever this setting
+     *
+     * @param compression Format of written output, null to follow the file extension
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Each writer compresses on its own pool of this many threads. A PartitionedWriter writes up to its
+     * parallelism parts at once, each with its own writer, so keep this low there, or use 1 to compress on the
+     * threads writing the parts
+     *
+     * @param compressionThreads Number of threads compressing blocks of written output. Defaults to 2
+     */
+    public void setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    /**
+     * Share the strings returned by DataRow.getStringIntern() through the given interner, e.g. one interner held by
+     * the file class, or one per load spanning several files. By default each read uses its own interner, whose
+     * strings are released with the rows of the read
+     *
+     * @param interner Interner to use, null for one per read
+     */
+    public void setInterner(StringInterner interner) {
+        this.interner = interner;
+    }
+
+    /**
+     * Keep a small memo per column of the dates and year-months parsed by DataRow, keyed on their characters, so
+     * repeated values are parsed once. Enabled by default
+     *
+     * @param dateMemo false to parse dates on every access
+     */
+    public void setDateMemo(boolean dateMemo) {
+        this.dateMemo = dateMemo;
+    }
+
     public void setNullValue(String s) {
         this.nullValue = s;
     }
@@ -58,17 +125,17 @@ public abstract class AbstractTSVFile<T> implements IDataFile<T> {
     }
 
     public List<RowError> getErrors() {
-        return errors.getAll();
+        return errors;
     }
 
     // Public methods
     @Override
-    public void setData(ArrayList<T> data) {
+    public void setData(List<T> data) {
         this.data = data;
     }
 
     @Override
-    public ArrayList<T> getData() {
+    public List<T> getData() {
         return data;
     }
 
@@ -77,40 +144,130 @@ public abstract class AbstractTSVFile<T> implements IDataFile<T> {
      *
      * @param is InputStream from which data is to be read
      */
-
     @Override
     public void read(InputStream is) throws Exception {
         PagedList<T> pagedList = new PagedList<>();
-        Set<String> expectedHeaderSet = new HashSet<>(Arrays.asList(getHeaders()));
-        errors = new PagedList<>();
-        count = 0;
-        reader = new CSVReader(new InputStreamReader(is), delimValue.charAt(0));
-        String[] tokens;
+        read(is, pagedList::add);
+        data = pagedList;
+    }
 
-        // Read headers. If no headers, don't read further
-        Set<String> headers = readHeaders();
-        if (!(expectedHeaderSet.isEmpty())) {
-            validateHeaders(headers, expectedHeaderSet);
+    /**
+     * Read and parse records of data from an input stream, handing each row to the consumer as soon as it is parsed.
+     * Rows are not stored, so getData() is not populated by this method
+     *
+     * @param is       InputStream from which data is to be read
+     * @param consumer Consumer which receives each successfully parsed row
+     */
+    @Override
+    public void read(InputStream is, IRowConsumer<T> consumer) throws Exception {
+        try (RowCursor<T> cursor = openCursor(is)) {
+            cursor.drain(consumer);
         }
-        DataRow dataRow = new DataRow(headerMap);
-        while ((tokens = reader.readNext()) != null) {
-            count++;
-            if (count > maxRows) {
-                throw new SheetException("Maximum rows allowed is : " + maxRows);
+    }
+
+    /**
+     * Read and parse a local file. With parallelism greater than 1, the file is memory mapped and split at record (quote aware)
+     * boundaries into segments which are parsed concurrently; rows and errors keep their absolute row numbers
+     *
+     * @param file File from which data is to be read
+     */
+    @Override
+    public void read(File file) throws Exception {
+        // Compressed files cannot be split, so they are read as a stream
+        if (parallelism <= 1 || Compression.detect(file) != Compression.NONE) {
+            try (InputStream is = new FileInputStream(file)) {
+                read(is);
             }
-            if (progress != null) {
-                progress.process(count);
+            return;
+        }
+        PagedList<T> pagedList = new PagedList<>();
+        try (RowCursor<T> cursor = openSegmentCursor(file)) {
+            cursor.drain(pagedList::add);
+        }
+        data = pagedList;
+    }
+
+    /**
+     * Read and validate the headers of an input stream and return a cursor over its rows. Each row is parsed only
+     * when the cursor advances. The cursor must be closed once done
+     *
+     * @param is InputStream from which data is to be read
+     * @return Cursor over the parsed rows
+     */
+    @Override
+    public RowCursor<T> openCursor(InputStream is) throws Exception {
+        openReader(is);
+        if (parallelism > 1) {
+            return openParallelCursor();
+        }
+        DataRow dataRow = newDataRow();
+        return new RowCursor<T>() {
+
+            @Override
+            protected boolean fetch() throws Exception {
+                String[] tokens;
+                while ((tokens = reader.readNext()) != null) {
+                    count++;
+                    if (count > maxRows) {
+                        throw new SheetException("Maximum rows allowed is : " + maxRows);
+                    }
+                    if (progress != null) {
+                        progress.process(count);
+                    }
+                    try {
+                        parse(tokens, dataRow, count);
+                        setCurrent(read(dataRow));
+                        return true;
+                    } catch (Exception e) {
+                        errors.add(new RowError(count, e.getMessage()));
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
             }
-            try {
-                parse(tokens, dataRow);
-                T t = read(dataRow);
-                pagedList.add(t);
-            } catch (Exception e) {
-                errors.add(new RowError(count, e.getMessage()));
+        };
+    }
+
+    /**
+     * Read the columns of a schema into a columnar table, without mapping rows through read(DataRow). Rows which
+     * fail to parse are reported in getErrors()
+     *
+     * @param is     InputStream from which data is to be read
+     * @param schema Columns to read and the types to store them as
+     * @return Table of the rows read
+     */
+    @Override
+    public ColumnTable readTable(InputStream is, TableSchema schema) throws Exception {
+        openReader(is);
+        try {
+            ColumnTable table = new ColumnTable(schema);
+            int[] indices = table.bind(headerMap);
+            DataRow dataRow = newDataRow();
+            String[] tokens;
+            while ((tokens = reader.readNext()) != null) {
+                count++;
+                if (count > maxRows) {
+                    throw new SheetException("Maximum rows allowed is : " + maxRows);
+                }
+                if (progress != null) {
+                    progress.process(count);
+                }
+                try {
+                    parse(tokens, dataRow, count);
+                    table.append(dataRow, indices);
+                } catch (Exception e) {
+                    errors.add(new RowError(count, e.getMessage()));
+                }
             }
+            table.trim();
+            return table;
+        } finally {
+            reader.close();
         }
-        data = pagedList.getAll();
-        reader.close();
     }
 
     /**
@@ -120,28 +277,54 @@ public abstract class AbstractTSVFile<T> implements IDataFile<T> {
      */
     @Override
     public void write(OutputStream os) throws IOException {
-        CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(os), delimValue.charAt(0));
-        count = 0;
+        try (RowWriter<T> rowWriter = openWriter(os)) {
+            rowWriter.appendAll(data);
+        }
+    }
+
+    /**
+     * Write the headers onto an OutputStream and return a writer appending rows after them. The writer must be
+     * closed once done, which also closes the stream
+     *
+     * @param os OutputStream on which to write data
+     * @return Writer of the rows
+     */
+    @Override
+    public RowWriter<T> openWriter(OutputStream os) throws IOException {
+        CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(
+                getWriteCompression().compress(os, compressionThreads), StandardCharsets.UTF_8), delimValue.charAt(0));
         // Write headers
         headerMap = new HashMap<>();
         String[] headers = getHeaders();
         for (int i = 0; i < headers.length; i++) {
             headerMap.put(headers[i], i);
         }
+        // Handles of columns which are not written stay unbound
+        columns.bind(headerMap);
         csvWriter.writeNext(headers);
 
-        // Write rows
         DataRow r = new DataRow(headerMap);
         r.setTokens(new String[headerMap.size()]);
-        for (T t : data) {
-            count++;
-            write(r, t);
-            csvWriter.writeNext(r.getTokens());
-            if (progress != null) {
-                progress.process(count);
+        return new RowWriter<T>(progress) {
+
+            @Override
+            protected void writeRow(T t) {
+                write(r, t);
+                csvWriter.writeNext(r.getTokens());
             }
-        }
-        csvWriter.close();
+
+            @Override
+            protected void closeOutput() throws IOException {
+                csvWriter.close();
+            }
+        };
+    }
+
+    /**
+     * @return Format of written output, explicitly set or implied by the file extension
+     */
+    private Compression getWriteCompression() {
+        return compression != null ? compression : Compression.fromFileName(fileExtension);
     }
 
     @Override
@@ -164,6 +347,16 @@ public abstract class AbstractTSVFile<T> implements IDataFile<T> {
     }
 
 
+    /**
+     * Resolve the column handles against the header which was read
+     */
+    private void bindColumns() throws SheetException {
+        Set<String> missing = columns.bind(headerMap);
+        if (!missing.isEmpty()) {
+            throw new SheetException(String.join(",", missing) + " are not found in the file");
+        }
+    }
+
     /**
      * Reads and Maps the first line of the input file as header. Separates tokens based on delimValues
      * Creates a Mapping, stored in "headerMap", from the header token to an integer index
@@ -185,15 +378,147 @@ public abstract class AbstractTSVFile<T> implements IDataFile<T> {
         return headerMap.keySet();
     }
 
+    /**
+     * Open a reader over an input stream, then read, validate and bind its headers
+     *
+     * @param is InputStream from which data is to be read
+     */
+    private void openReader(InputStream is) throws Exception {
+        Set<String> expectedHeaderSet = new HashSet<>(Arrays.asList(getHeaders()));
+        errors = new PagedList<>();
+        count = 0;
+        readInterner = interner == null ? new StringInterner() : interner;
+        reader = new CSVReader(new InputStreamReader(Compression.decompress(is), StandardCharsets.UTF_8),
+                delimValue.charAt(0));
+
+        // Read headers. If no headers, don't read further
+        try {
+            Set<String> headers = readHeaders();
+            if (!(expectedHeaderSet.isEmpty())) {
+                validateHeaders(headers, expectedHeaderSet);
+            }
+            bindColumns();
+        } catch (Exception e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Return a cursor which reads records on the calling thread and maps them on a pool of threads
+     *
+     * @return Cursor over the parsed rows
+     */
+    private RowCursor<T> openParallelCursor() {
+        return new ParallelRowCursor<String[], T>(parallelism, maxRows, progress, errors) {
+
+            @Override
+            protected String[] readRaw() throws IOException {
+                return reader.readNext();
+            }
+
+            @Override
+            protected RowMapper<String[], T> newMapper() {
+                DataRow dataRow = newDataRow();
+                return (tokens, row) -> {
+                    parse(tokens, dataRow, row);
+                    return read(dataRow);
+                };
+            }
+
+            @Override
+            protected void closeInput() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * Map a file and return a cursor which parses its segments on a pool of threads
+     *
+     * @param file File from which data is to be read
+     * @return Cursor over the parsed rows
+     */
+    private RowCursor<T> openSegmentCursor(File file) throws Exception {
+        Set<String> expectedHeaderSet = new HashSet<>(Arrays.asList(getHeaders()));
+        errors = new PagedList<>();
+        count = 0;
+        readInterner = interner == null ? new StringInterner() : interner;
+        MappedFile mapped = new MappedFile(file);
+        ExecutorService pool = ThreadPools.newFixedPool(parallelism, "sheet-reader");
+        try {
+            MappedFile.Segments segments = mapped.splitQuoted(parallelism, delimValue.charAt(0),
+                    CSVParser.DEFAULT_QUOTE_CHARACTER, CSVParser.DEFAULT_ESCAPE_CHARACTER);
+            reader = new CSVReader(new InputStreamReader(mapped.stream(0, segments.bounds[1]), StandardCharsets.UTF_8),
+                    delimValue.charAt(0));
+            Set<String> headers = readHeaders();
+            if (!(expectedHeaderSet.isEmpty())) {
+                validateHeaders(headers, expectedHeaderSet);
+            }
+            bindColumns();
+
+            // Segment 0 is the header
+            List<Callable<RowBatch<T>>> tasks = new ArrayList<>();
+            int base = 0;
+            for (int i = 1; i < segments.count(); i++) {
+                long start = segments.bounds[i];
+                long end = segments.bounds[i + 1];
+                int first = base;
+                int lines = segments.lines[i];
+                tasks.add(() -> mapSegment(mapped, start, end, first, lines));
+                base += lines;
+            }
+            return new SegmentCursor<>(pool, tasks, parallelism * 2, mapped, maxRows, progress, errors);
+        } catch (Exception e) {
+            pool.shutdownNow();
+            mapped.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Parse and map the records in [start, end) of a mapped file
+     *
+     * @param base  Number of rows before this segment
+     * @param lines Number of records in this segment
+     * @return Batch of mapped rows
+     */
+    private RowBatch<T> mapSegment(MappedFile mapped, long start, long end, int base, int lines) throws IOException {
+        // No need to map rows past maxRows, the cursor fails once it reaches them
+        long limit = maxRows + 1L - base;
+        RowBatch<T> batch = new RowBatch<>((int) Math.max(0, Math.min(lines, limit)));
+        DataRow dataRow = newDataRow();
+        String[] tokens;
+        try (CSVReader csvReader = new CSVReader(new InputStreamReader(mapped.stream(start, end), StandardCharsets.UTF_8),
+                delimValue.charAt(0))) {
+            while (batch.size() < limit && (tokens = csvReader.readNext()) != null) {
+                try {
+                    parse(tokens, dataRow, base + batch.size() + 1);
+                    batch.add(read(dataRow));
+                } catch (Exception e) {
+                    batch.addError(e.getMessage());
+                }
+            }
+        }
+        return batch;
+    }
+
+    private DataRow newDataRow() {
+        DataRow dataRow = new DataRow(headerMap);
+        dataRow.setInterner(readInterner);
+        dataRow.setDateMemo(dateMemo);
+        return dataRow;
+    }
+
     /**
      * Parse input line based on delimValue. Replaces strings matching nullValue with 'null'
      * Saves the tokenized list and count of lines into data members of DataRow object
      *
      * @param tokens Input line to be parse
      * @param r    DataRow to be used for parsing
-     * @return true if parsed without errors, false otherwise
+     * @param number Row number of the record
      */
-    private void parse(String[] tokens, DataRow r) throws SheetException {
+    private void parse(String[] tokens, DataRow r, int number) throws SheetException {
         for (int i = 0; i < tokens.length; i++) {
             if (nullValue.equalsIgnoreCase(tokens[i])) {
                 tokens[i] = null;
@@ -204,7 +529,7 @@ public abstract class AbstractTSVFile<T> implements IDataFile<T> {
         }
 
         r.setTokens(tokens);
-        r.setNumber(count);
+        r.setNumber(number);
     }
 
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.util.List;
+
+/**
+ * Cursor which delivers rows from a sequence of RowBatches in order. Row numbering, maxRows, progress reporting and
+ * error collection are applied here, record by record, exactly as a sequential read would apply them
+ */
+abstract class BatchCursor<T> extends RowCursor<T> {
+
+    private final Integer maxRows;
+    private final IProgressMonitor progress;
+    private final List<RowError> errors;
+    private int count;
+    private RowBatch<T> batch;
+    private int record;
+    private int rowIndex;
+    private int errorIndex;
+
+    protected BatchCursor(Integer maxRows, IProgressMonitor progress, List<RowError> errors) {
+        this.maxRows = maxRows;
+        this.progress = progress;
+        this.errors = errors;
+    }
+
+    /**
+     * @return Next batch in input order, null at end of input
+     */
+    protected abstract RowBatch<T> nextBatch() throws Exception;
+
+    @Override
+    protected boolean fetch() throws Exception {
+        while (true) {
+            if (batch == null || record == batch.size()) {
+                batch = nextBatch();
+                record = 0;
+                rowIndex = 0;
+                errorIndex = 0;
+                if (batch == null) {
+                    return false;
+                }
+                continue;
+            }
+            record++;
+            count++;
+            if (count > maxRows) {
+                throw new SheetException("Maximum rows allowed is : " + maxRows);
+            }
+            if (progress != null) {
+                progress.process(count);
+            }
+            List<RowError> batchErrors = batch.getErrors();
+            if (errorIndex < batchErrors.size() && batchErrors.get(errorIndex).getRow() == record) {
+                RowError error = batchErrors.get(errorIndex++);
+                error.setRow(count);
+                errors.add(error);
+                continue;
+            }
+            setCurrent(batch.getRows().get(rowIndex++));
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Output stream which cuts written bytes into fixed size blocks and compresses each block independently, pigz
+ * style. Blocks are compressed on a pool of threads and written to the underlying stream in order; the number of
+ * blocks in flight is bounded, so memory stays at a few blocks per thread whatever the size of the output
+ */
+class BlockCompressorOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final Compression compression;
+    private final int blockSize;
+    private final ExecutorService pool;
+    private final int maxPending;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] buf;
+    private int pos;
+    private boolean closed;
+
+    /**
+     * @param out         Stream to write compressed blocks to
+     * @param compression Format of the blocks
+     * @param threads     Number of threads compressing blocks. With 1, blocks are compressed on the writing thread
+     * @param blockSize   Size of the uncompressed blocks in bytes
+     */
+    BlockCompressorOutputStream(OutputStream out, Compression compression, int threads, int blockSize) {
+        this.out = out;
+        this.compression = compression;
+        this.blockSize = Math.max(blockSize, 64 * 1024);
+        this.pool = threads > 1 ? ThreadPools.newFixedPool(threads, "block-compressor") : null;
+        this.maxPending = threads * 2;
+        this.buf = new byte[this.blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (pos == buf.length) {
+            submitBlock();
+        }
+        buf[pos++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (pos == buf.length) {
+                submitBlock();
+            }
+            int n = Math.min(len, buf.length - pos);
+            System.arraycopy(b, off, buf, pos, n);
+            pos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Flush the blocks already compressed. The partly filled block is kept, as cutting it short would cost ratio
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submitBlock();
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if (pos == 0) {
+            return;
+        }
+        byte[] block = buf;
+        int length = pos;
+        buf = new byte[blockSize];
+        pos = 0;
+        if (pool == null) {
+            out.write(compression.compressBlock(block, length));
+            return;
+        }
+        while (pending.size() >= maxPending) {
+            writeNext();
+        }
+        pending.add(pool.submit(() -> compression.compressBlock(block, length)));
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(ThreadPools.await(pending.poll()));
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+}
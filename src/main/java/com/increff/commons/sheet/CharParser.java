@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+/**
+ * Parses numbers and booleans from a range of characters, without creating an intermediate String or boxing the
+ * result. Accepts and rejects the same input as Integer.parseInt, Long.parseLong, Double.parseDouble and
+ * Boolean.parseBoolean, and fails with the same messages
+ */
+final class CharParser {
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // Mantissas up to 15 digits and divisors up to 1e22 are exact doubles, so one division rounds correctly
+    private static final int MAX_FAST_DIGITS = 15;
+
+    private CharParser() {
+    }
+
+    static int parseInt(CharSequence s, int start, int end) {
+        return (int) parseLong(s, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    static long parseLong(CharSequence s, int start, int end) {
+        return parseLong(s, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    static double parseDouble(CharSequence s, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > MAX_FAST_DIGITS) {
+                    return Double.parseDouble(s.subSequence(start, end).toString());
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (point) {
+                    scale++;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                // Exponents, special values, whitespace and invalid input
+                return Double.parseDouble(s.subSequence(start, end).toString());
+            }
+        }
+        if (digits == 0) {
+            return Double.parseDouble(s.subSequence(start, end).toString());
+        }
+        double v = scale == 0 ? mantissa : mantissa / POW10[scale];
+        return negative ? -v : v;
+    }
+
+    static boolean parseBoolean(CharSequence s, int start, int end) {
+        if (end - start != 4) {
+            return false;
+        }
+        return Character.toLowerCase(s.charAt(start)) == 't' && Character.toLowerCase(s.charAt(start + 1)) == 'r'
+                && Character.toLowerCase(s.charAt(start + 2)) == 'u' && Character.toLowerCase(s.charAt(start + 3)) == 'e';
+    }
+
+    private static long parseLong(CharSequence s, int start, int end, long min, long max) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        if (i == end) {
+            throw invalid(s, start, end);
+        }
+        // Accumulate negatively, as the magnitude of min is larger than that of max
+        long limit = negative ? min : -max;
+        long multmin = limit / 10;
+        long v = 0;
+        for (; i < end; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || v < multmin) {
+                throw invalid(s, start, end);
+            }
+            v *= 10;
+            if (v < limit + digit) {
+                throw invalid(s, start, end);
+            }
+            v -= digit;
+        }
+        return negative ? v : -v;
+    }
+
+    private static NumberFormatException invalid(CharSequence s, int start, int end) {
+        return new NumberFormatException("For input string: \"" + s.subSequence(start, end) + "\"");
+    }
+
+}
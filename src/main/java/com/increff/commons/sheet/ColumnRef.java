@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.function.Function;
+
+/**
+ * Handle to a column of a data file, created through Columns. The handle is resolved against the headers once when
+ * a file is opened, and then reads tokens of a DataRow by index instead of looking up the column name on every row
+ *
+ * @param <V> Type the column is parsed to
+ */
+public class ColumnRef<V> {
+
+    private final String name;
+    private final Function<String, V> parser;
+    private int index = -1;
+
+    ColumnRef(String name, Function<String, V> parser) {
+        this.name = name;
+        this.parser = parser;
+    }
+
+    /**
+     * @return Name of the column
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Index of the column in the file, or -1 until a file is opened
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @param row Row to fetch value from
+     * @return Parsed value of this column, null if the token is null
+     */
+    public V get(DataRow row) {
+        String s = row.getValue(checkIndex());
+        return s == null ? null : parser.apply(s);
+    }
+
+    /**
+     * @param row Row to fetch value from
+     * @return Token of this column
+     */
+    public String getString(DataRow row) {
+        return row.getValue(checkIndex());
+    }
+
+    public boolean isNull(DataRow row) {
+        return row.isNull(checkIndex());
+    }
+
+    public int getInt(DataRow row, int defaultValue) {
+        return row.getInt(checkIndex(), defaultValue);
+    }
+
+    public long getLong(DataRow row, long defaultValue) {
+        return row.getLong(checkIndex(), defaultValue);
+    }
+
+    public double getDouble(DataRow row, double defaultValue) {
+        return row.getDouble(checkIndex(), defaultValue);
+    }
+
+    public boolean getBoolean(DataRow row, boolean defaultValue) {
+        return row.getBoolean(checkIndex(), defaultValue);
+    }
+
+    /**
+     * @param row Row to fetch value from
+     * @return yyyy-MM-dd value of this column, parsed through the date memo of the row. null if the token is null
+     */
+    public LocalDate getLocalDate(DataRow row) {
+        return row.getLocalDate(checkIndex());
+    }
+
+    /**
+     * @param row Row to fetch value from
+     * @return yyyy-MM value of this column, parsed through the date memo of the row. null if the token is null
+     */
+    public YearMonth getYearMonth(DataRow row) {
+        return row.getYearMonth(checkIndex());
+    }
+
+    /**
+     * @param row   Row on which to set the value
+     * @param value Value of the token
+     */
+    public void set(DataRow row, Object value) {
+        row.setToken(checkIndex(), value);
+    }
+
+    public void setInt(DataRow row, int value) {
+        row.setInt(checkIndex(), value);
+    }
+
+    public void setLong(DataRow row, long value) {
+        row.setLong(checkIndex(), value);
+    }
+
+    public void setDouble(DataRow row, double value) {
+        row.setDouble(checkIndex(), value);
+    }
+
+    public void setBoolean(DataRow row, boolean value) {
+        row.setBoolean(checkIndex(), value);
+    }
+
+    public void setLocalDate(DataRow row, LocalDate value) {
+        row.setLocalDate(checkIndex(), value);
+    }
+
+    void bind(int index) {
+        this.index = index;
+    }
+
+    private int checkIndex() {
+        if (index < 0) {
+            throw new IllegalStateException("Column " + name + " is not bound to a file");
+        }
+        return index;
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rows of a file held column by column, in primitive arrays with null bitmaps and dictionary encoded strings, as
+ * declared by a TableSchema. Filled directly by the readers through readTable(), without creating row objects
+ */
+public class ColumnTable {
+
+    private final TableSchema schema;
+    private final TableColumn[] columns;
+    private final Map<String, Integer> index = new HashMap<>();
+    private int size;
+
+    ColumnTable(TableSchema schema) {
+        this.schema = schema;
+        this.columns = new TableColumn[schema.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new TableColumn(schema.getName(i), schema.getType(i));
+            index.put(schema.getName(i), i);
+        }
+    }
+
+    public TableSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return Number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * @param col Name of column
+     * @return Index of the column, to be used with the integer based getters
+     */
+    public int getIndex(String col) {
+        Integer i = index.get(col);
+        if (i == null) {
+            throw new RuntimeException("Invalid column:" + col);
+        }
+        return i;
+    }
+
+    public TableColumn getColumn(int col) {
+        return columns[col];
+    }
+
+    public TableColumn getColumn(String col) {
+        return columns[getIndex(col)];
+    }
+
+    /* ROW BASED GETS */
+
+    public boolean isNull(int row, int col) {
+        return columns[col].isNull(row);
+    }
+
+    public int getInt(int row, int col, int defaultValue) {
+        return columns[col].getInt(row, defaultValue);
+    }
+
+    public long getLong(int row, int col, long defaultValue) {
+        return columns[col].getLong(row, defaultValue);
+    }
+
+    public double getDouble(int row, int col, double defaultValue) {
+        return columns[col].getDouble(row, defaultValue);
+    }
+
+    public boolean getBoolean(int row, int col, boolean defaultValue) {
+        return columns[col].getBoolean(row, defaultValue);
+    }
+
+    public LocalDate getLocalDate(int row, int col) {
+        return columns[col].getLocalDate(row);
+    }
+
+    public String getString(int row, int col) {
+        return columns[col].getString(row);
+    }
+
+    public Object getValue(int row, int col) {
+        return columns[col].getValue(row);
+    }
+
+    /* LOADING, used by the readers */
+
+    /**
+     * Append a row of a delimited file. If a value fails to parse, the row is left out and the exception is thrown
+     *
+     * @param r       Parsed row
+     * @param indices Index in the row of each column of the table
+     */
+    void append(DataRow r, int[] indices) {
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                TableColumn column = columns[i];
+                int col = indices[i];
+                if (r.isNull(col)) {
+                    column.appendNull();
+                    continue;
+                }
+                switch (column.getType()) {
+                    case INT:
+                        column.appendInt(r.getInt(col, 0));
+                        break;
+                    case LONG:
+                        column.appendLong(r.getLong(col, 0));
+                        break;
+                    case DOUBLE:
+                        column.appendDouble(r.getDouble(col, 0));
+                        break;
+                    case BOOLEAN:
+                        column.appendBoolean(r.getBoolean(col, false));
+                        break;
+                    case DATE:
+                        column.appendDate(r.getLocalDate(col));
+                        break;
+                    default:
+                        column.appendString(r.getValue(col));
+                }
+            }
+        } catch (RuntimeException e) {
+            rollback();
+            throw e;
+        }
+        size++;
+    }
+
+    /**
+     * Append a row of a parquet file
+     *
+     * @param r       Row read from the file
+     * @param indices Index in the row of each column of the table
+     */
+    void append(ParquetRow r, int[] indices) {
+        for (int i = 0; i < columns.length; i++) {
+            TableColumn column = columns[i];
+            int col = indices[i];
+            if (r.isNull(col)) {
+                column.appendNull();
+                continue;
+            }
+            switch (column.getType()) {
+                case INT:
+                    column.appendInt(r.getInt(col, 0));
+                    break;
+                case LONG:
+                    column.appendLong(r.getLong(col, 0));
+                    break;
+                case DOUBLE:
+                    column.appendDouble(r.getDouble(col, 0));
+                    break;
+                case BOOLEAN:
+                    column.appendBoolean(r.getBoolean(col, false));
+                    break;
+                case DATE:
+                    // Dates are stored as epoch days, as in the file
+                    column.appendInt(r.getInt(col, 0));
+                    break;
+                default:
+                    column.appendString(r.getString(col));
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Append all rows of a table with the same schema, e.g. one read from another part of the same file
+     *
+     * @param other Table to append
+     */
+    void appendAll(ColumnTable other) {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].appendAll(other.columns[i]);
+        }
+        size += other.size;
+    }
+
+    /**
+     * Allocate room for a number of rows up front, when the row count is known before loading
+     *
+     * @param rows Number of rows the table will hold
+     */
+    void ensureCapacity(int rows) {
+        for (TableColumn column : columns) {
+            column.ensureCapacity(rows);
+        }
+    }
+
+    /**
+     * Release spare capacity once all rows are loaded
+     */
+    void trim() {
+        for (TableColumn column : columns) {
+            column.trim();
+        }
+    }
+
+    /**
+     * Resolve the columns of the table against the columns of a file
+     *
+     * @param fileColumns Mapping of column names of the file to indices
+     * @return Index in the file of each column of the table
+     */
+    int[] bind(Map<String, Integer> fileColumns) throws SheetException {
+        int[] indices = new int[columns.length];
+        StringBuilder missing = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            Integer col = fileColumns.get(columns[i].getName());
+            if (col == null) {
+                missing.append(missing.length() == 0 ? "" : ",").append(columns[i].getName());
+            } else {
+                indices[i] = col;
+            }
+        }
+        if (missing.length() > 0) {
+            throw new SheetException(missing + " are not found in the file");
+        }
+        return indices;
+    }
+
+    private void rollback() {
+        for (TableColumn column : columns) {
+            column.truncate(size);
+        }
+    }
+
+}
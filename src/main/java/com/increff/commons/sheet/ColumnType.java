@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+/**
+ * Types of the columns of a ColumnTable, which decide how values are stored
+ */
+public enum ColumnType {
+    /** Stored as an int array */
+    INT,
+    /** Stored as a long array */
+    LONG,
+    /** Stored as a double array */
+    DOUBLE,
+    /** Stored as a bitmap */
+    BOOLEAN,
+    /** Stored as an int array of epoch days */
+    DATE,
+    /** Stored as an int array of codes into a dictionary of distinct values */
+    STRING
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Set of column handles used by a data file. Handles are declared once, typically as fields of the file class, and
+ * are bound to the header of each file when it is opened
+ */
+public class Columns {
+
+    private final List<ColumnRef<?>> refs = new ArrayList<>();
+
+    public ColumnRef<String> stringCol(String name) {
+        return col(name, Function.identity());
+    }
+
+    public ColumnRef<Integer> intCol(String name) {
+        return col(name, Integer::parseInt);
+    }
+
+    public ColumnRef<Long> longCol(String name) {
+        return col(name, Long::parseLong);
+    }
+
+    public ColumnRef<Double> doubleCol(String name) {
+        return col(name, Double::parseDouble);
+    }
+
+    public ColumnRef<BigDecimal> bigDecimalCol(String name) {
+        return col(name, BigDecimal::new);
+    }
+
+    public ColumnRef<Boolean> booleanCol(String name) {
+        return col(name, Boolean::parseBoolean);
+    }
+
+    public ColumnRef<LocalDate> localDateCol(String name) {
+        return col(name, DateParser::parseLocalDate);
+    }
+
+    public ColumnRef<LocalDate> localDateCol(String name, DateTimeFormatter formatter) {
+        return col(name, s -> LocalDate.parse(s, formatter));
+    }
+
+    public ColumnRef<YearMonth> yearMonthCol(String name) {
+        return col(name, DateParser::parseYearMonth);
+    }
+
+    /**
+     * @param name   Name of column
+     * @param parser Function parsing non-null tokens of the column
+     * @return Handle to the column
+     */
+    public <V> ColumnRef<V> col(String name, Function<String, V> parser) {
+        ColumnRef<V> ref = new ColumnRef<>(name, parser);
+        refs.add(ref);
+        return ref;
+    }
+
+    /**
+     * Resolve all handles against the header of a file. Handles of missing columns are left unbound
+     *
+     * @param headerMap Mapping of column names to indices
+     * @return Names of the columns which are not present in the header
+     */
+    Set<String> bind(Map<String, Integer> headerMap) {
+        Set<String> missing = new LinkedHashSet<>();
+        for (ColumnRef<?> ref : refs) {
+            Integer index = headerMap.get(ref.getName());
+            if (index == null) {
+                missing.add(ref.getName());
+            }
+            ref.bind(index == null ? -1 : index);
+        }
+        return missing;
+    }
+
+}
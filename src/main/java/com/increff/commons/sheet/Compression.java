@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStream;
+import io.airlift.compress.lz4.Lz4Compressor;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.XXHash32;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression formats of delimited files. Output is compressed in independent blocks, each a complete gzip member,
+ * zstd frame or lz4 frame, so blocks can be compressed in parallel and the output is still a single valid file for
+ * the standard tools. Input is decompressed by the format found in its first bytes, whatever the file extension
+ */
+public enum Compression {
+
+    NONE(""),
+    GZIP(".gz"),
+    ZSTD(".zst"),
+    LZ4(".lz4");
+
+    /**
+     * Compression threads of a writer unless set. Kept small, as every writer starts its own pool and a
+     * PartitionedWriter runs several writers at once
+     */
+    static final int DEFAULT_THREADS = 2;
+    private static final int ZSTD_LEVEL = 3;
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    // Magic, version 1 with independent blocks, 1MB maximum block size, header checksum
+    private static final byte[] LZ4_FRAME_HEADER = lz4FrameHeader((byte) 0x60, (byte) 0x60);
+
+    private final String suffix;
+
+    Compression(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * @return Suffix of files in this format, e.g. ".gz", empty for NONE
+     */
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * @param fileName Name or extension of a file, e.g. "stock.tsv.gz" or ".tsv.zst"
+     * @return Format implied by the last suffix of the name, NONE if it is not a compression suffix
+     */
+    public static Compression fromFileName(String fileName) {
+        for (Compression compression : values()) {
+            if (compression != NONE && fileName != null && fileName.endsWith(compression.suffix)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @param file File to inspect
+     * @return Format found in the first bytes of the file, NONE if they match no compression format
+     */
+    static Compression detect(File file) throws IOException {
+        try (InputStream is = new FileInputStream(file)) {
+            byte[] magic = new byte[4];
+            return detect(magic, readFully(is, magic));
+        }
+    }
+
+    /**
+     * Wrap an input stream in a decompressor for the format found in its first bytes. Streams of concatenated
+     * blocks, as written by compress(), are read through to the end
+     *
+     * @param is Stream to read
+     * @return Stream of decompressed bytes, or a stream over the input if it is not compressed
+     */
+    static InputStream decompress(InputStream is) throws IOException {
+        InputStream in = is.markSupported() ? is : new BufferedInputStream(is, 64 * 1024);
+        byte[] magic = new byte[4];
+        in.mark(magic.length);
+        int n = readFully(in, magic);
+        in.reset();
+        switch (detect(magic, n)) {
+            case GZIP:
+                return new GzipCompressorInputStream(in, true);
+            case ZSTD:
+                return new BufferedInputStream(new ZstdInputStream(in), 64 * 1024);
+            case LZ4:
+                return new FramedLZ4CompressorInputStream(in, true);
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * Wrap an output stream in a compressor for this format
+     *
+     * @param os      Stream to write compressed bytes to, closed with the returned stream
+     * @param threads Number of threads compressing blocks
+     * @return Stream compressing written bytes, or the stream itself for NONE
+     */
+    OutputStream compress(OutputStream os, int threads) {
+        if (this == NONE) {
+            return os;
+        }
+        return new BlockCompressorOutputStream(os, this, threads, BLOCK_SIZE);
+    }
+
+    /**
+     * Compress a block into a complete, independently decodable member or frame of this format
+     *
+     * @param block  Uncompressed bytes
+     * @param length Number of bytes of the block to compress
+     * @return Compressed bytes
+     */
+    byte[] compressBlock(byte[] block, int length) throws IOException {
+        switch (this) {
+            case GZIP: {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(length / 4 + 64);
+                try (GZIPOutputStream gz = new GZIPOutputStream(bos, 64 * 1024)) {
+                    gz.write(block, 0, length);
+                }
+                return bos.toByteArray();
+            }
+            case ZSTD: {
+                byte[] dst = new byte[(int) Zstd.compressBound(length)];
+                long size = Zstd.compressByteArray(dst, 0, dst.length, block, 0, length, ZSTD_LEVEL);
+                if (Zstd.isError(size)) {
+                    throw new IOException("Zstd compression failed: " + Zstd.getErrorName(size));
+                }
+                byte[] out = new byte[(int) size];
+                System.arraycopy(dst, 0, out, 0, out.length);
+                return out;
+            }
+            case LZ4: {
+                // Frame of a single independent block, without checksums
+                Lz4Compressor lz4 = new Lz4Compressor();
+                int pos = LZ4_FRAME_HEADER.length;
+                byte[] out = new byte[pos + 4 + Math.max(lz4.maxCompressedLength(length), length) + 4];
+                System.arraycopy(LZ4_FRAME_HEADER, 0, out, 0, pos);
+                int size = lz4.compress(block, 0, length, out, pos + 4, out.length - pos - 8);
+                if (size < length) {
+                    writeIntLE(out, pos, size);
+                } else {
+                    // Incompressible blocks are stored as is, flagged by the high bit of their size
+                    System.arraycopy(block, 0, out, pos + 4, length);
+                    writeIntLE(out, pos, length | 0x80000000);
+                    size = length;
+                }
+                pos += 4 + size;
+                writeIntLE(out, pos, 0);
+                return Arrays.copyOf(out, pos + 4);
+            }
+            default:
+                byte[] out = new byte[length];
+                System.arraycopy(block, 0, out, 0, length);
+                return out;
+        }
+    }
+
+    private static Compression detect(byte[] magic, int n) {
+        if (n >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+            return GZIP;
+        }
+        if (n >= 4 && (magic[0] & 0xFF) == 0x28 && (magic[1] & 0xFF) == 0xB5 && (magic[2] & 0xFF) == 0x2F
+                && (magic[3] & 0xFF) == 0xFD) {
+            return ZSTD;
+        }
+        if (n >= 4 && (magic[0] & 0xFF) == 0x04 && (magic[1] & 0xFF) == 0x22 && (magic[2] & 0xFF) == 0x4D
+                && (magic[3] & 0xFF) == 0x18) {
+            return LZ4;
+        }
+        return NONE;
+    }
+
+    private static byte[] lz4FrameHeader(byte flags, byte blockDescriptor) {
+        XXHash32 hash = new XXHash32();
+        hash.update(new byte[]{flags, blockDescriptor}, 0, 2);
+        return new byte[]{0x04, 0x22, 0x4D, 0x18, flags, blockDescriptor, (byte) (hash.getValue() >> 8)};
+    }
+
+    private static void writeIntLE(byte[] buf, int pos, int value) {
+        buf[pos] = (byte) value;
+        buf[pos + 1] = (byte) (value >> 8);
+        buf[pos + 2] = (byte) (value >> 16);
+        buf[pos + 3] = (byte) (value >> 24);
+    }
+
+    private static int readFully(InputStream is, byte[] buf) throws IOException {
+        int n = 0;
+        while (n < buf.length) {
+            int read = is.read(buf, n, buf.length - n);
+            if (read < 0) {
+                break;
+            }
+            n += read;
+        }
+        return n;
+    }
+
+}
@@ -11,12 +11,16 @@
 
 package com.increff.commons.sheet;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.CharBuffer;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 
@@ -25,10 +29,32 @@ import java.util.HashMap;
  */
 public class DataRow {
 
+    private static final byte TOKEN = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte DATE = 4;
+
     private String[] tokens;
     private HashMap<String, Integer> columns;
     int rowIndex;
 
+    // Lazy mode: the line buffer and field boundaries are kept, and tokens are cut when first accessed
+    private Tokenizer tokenizer;
+    private char[] buf;
+    private CharBuffer chars;
+    private int[] bounds;
+    private int[] cut;
+    private int generation;
+    private StringInterner interner;
+    // Per column memo of parsed dates, null when dates are parsed on every access
+    private DateParser[] dates = new DateParser[0];
+
+    // Typed values set for writing, kept unformatted until they are written or read back as tokens
+    private byte[] kinds;
+    private long[] longs;
+    private double[] doubles;
+
     public DataRow(HashMap<String, Integer> index) {
         this.columns = index;
         this.tokens = null;
@@ -44,11 +70,65 @@ public class DataRow {
         return i;
     }
 
+    /**
+     * Keep lines as a buffer and field boundaries, cutting tokens only for the columns which are accessed
+     *
+     * @param tokenizer Tokenizer of the file, used to find fields and null values
+     */
+    void setLazy(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+        this.bounds = new int[2 * tokens.length];
+        this.cut = new int[tokens.length];
+    }
+
+    /**
+     * @param interner Interner used by getStringIntern(), null to use String.intern()
+     */
+    void setInterner(StringInterner interner) {
+        this.interner = interner;
+    }
+
+    /**
+     * @param memo true to memoize the dates and year-months parsed in each column
+     */
+    void setDateMemo(boolean memo) {
+        this.dates = memo ? new DateParser[0] : null;
+    }
+
+    boolean isLazy() {
+        return tokenizer != null;
+    }
+
+    /**
+     * Set the line held by a lazy row. The buffer must not change until the row has been read
+     *
+     * @param buf   Buffer holding the line
+     * @param start Index of the first character of the line
+     * @param end   Index just past the last character of the line
+     * @return Number of fields in the line
+     */
+    int setLine(char[] buf, int start, int end) {
+        if (buf != this.buf) {
+            this.buf = buf;
+            this.chars = CharBuffer.wrap(buf);
+        }
+        if (++generation == 0) {
+            Arrays.fill(cut, 0);
+            generation = 1;
+        }
+        return tokenizer.mark(buf, start, end, bounds);
+    }
+
     /**
      * Fetches list of all tokens stored in the current DataRow object
      * @return List of Strings which are the tokens
      */
     public String[] getTokens() {
+        if (tokenizer != null || kinds != null) {
+            for (int i = 0; i < tokens.length; i++) {
+                getValue(i);
+            }
+        }
         return tokens;
     }
 
@@ -58,6 +138,14 @@ public class DataRow {
      * @return Fetched value
      */
     public String getValue(int index) {
+        if (kinds != null && kinds[index] != TOKEN) {
+            tokens[index] = format(index);
+            kinds[index] = TOKEN;
+        }
+        if (tokenizer != null && cut[index] != generation) {
+            tokens[index] = tokenizer.token(buf, bounds[2 * index], bounds[2 * index + 1]);
+            cut[index] = generation;
+        }
         return tokens[index];
     }
 
@@ -76,6 +164,7 @@ public class DataRow {
      */
     public void setTokens(String[] tokens) {
         this.tokens = tokens;
+        this.kinds = null;
     }
 
     /**
@@ -95,6 +184,12 @@ public class DataRow {
      */
     public void setToken(int index, Object token) {
         tokens[index] = token == null ? null : token.toString();
+        if (tokenizer != null) {
+            cut[index] = generation;
+        }
+        if (kinds != null) {
+            kinds[index] = TOKEN;
+        }
     }
 
     /**
@@ -106,6 +201,117 @@ public class DataRow {
         setToken(getIndex(col), token);
     }
 
+    /* TYPED SETS */
+    // Values are written straight into the output buffer of the file without being converted to a String first
+
+    public void setInt(int col, int value) {
+        setLong(col, value);
+    }
+
+    public void setInt(String col, int value) {
+        setLong(getIndex(col), value);
+    }
+
+    public void setLong(int col, long value) {
+        setKind(col, LONG);
+        longs[col] = value;
+    }
+
+    public void setLong(String col, long value) {
+        setLong(getIndex(col), value);
+    }
+
+    public void setDouble(int col, double value) {
+        setKind(col, DOUBLE);
+        doubles[col] = value;
+    }
+
+    public void setDouble(String col, double value) {
+        setDouble(getIndex(col), value);
+    }
+
+    public void setBoolean(int col, boolean value) {
+        setKind(col, BOOLEAN);
+        longs[col] = value ? 1 : 0;
+    }
+
+    public void setBoolean(String col, boolean value) {
+        setBoolean(getIndex(col), value);
+    }
+
+    /**
+     * @param col   Index of column
+     * @param value Date written as yyyy-MM-dd, null for the null value
+     */
+    public void setLocalDate(int col, LocalDate value) {
+        int year = value == null ? -1 : value.getYear();
+        if (year < 0 || year > 9999) {
+            setToken(col, value);
+            return;
+        }
+        setKind(col, DATE);
+        longs[col] = year * 10000L + value.getMonthValue() * 100 + value.getDayOfMonth();
+    }
+
+    public void setLocalDate(String col, LocalDate value) {
+        setLocalDate(getIndex(col), value);
+    }
+
+    private void setKind(int col, byte kind) {
+        if (kinds == null) {
+            kinds = new byte[tokens.length];
+            longs = new long[tokens.length];
+            doubles = new double[tokens.length];
+        }
+        kinds[col] = kind;
+        tokens[col] = null;
+    }
+
+    /**
+     * @return Typed value of a column formatted as a token
+     */
+    private String format(int col) {
+        switch (kinds[col]) {
+            case LONG:
+                return Long.toString(longs[col]);
+            case DOUBLE:
+                return Double.toString(doubles[col]);
+            case BOOLEAN:
+                return Boolean.toString(longs[col] != 0);
+            default:
+                long date = longs[col];
+                return LocalDate.of((int) (date / 10000), (int) (date / 100 % 100), (int) (date % 100)).toString();
+        }
+    }
+
+    /**
+     * Write the value of a column, formatting typed values straight into the output buffer
+     *
+     * @param col       Index of column
+     * @param out       Writer of the file
+     * @param nullValue Text written for null values
+     */
+    void write(int col, LineWriter out, String nullValue) throws IOException {
+        switch (kinds == null ? TOKEN : kinds[col]) {
+            case LONG:
+                out.writeLong(longs[col]);
+                break;
+            case DOUBLE:
+                out.writeDouble(doubles[col]);
+                break;
+            case BOOLEAN:
+                out.writeBoolean(longs[col] != 0);
+                break;
+            case DATE:
+                long date = longs[col];
+                out.writeDate((int) (date / 10000), (int) (date / 100 % 100), (int) (date % 100));
+                break;
+            default:
+                String s = getValue(col);
+                out.write(s == null ? nullValue : s);
+        }
+    }
+
     /**
      * Set the "count" variable which represents the row number/index of the current row
      * @param i Row number
@@ -188,26 +394,61 @@ public class DataRow {
 
     /**
      * @param col Name of column to fetch value from
-     * @return Returns fetched value from chosen column as LocalDate object
+     * @return Returns fetched yyyy-MM-dd value from chosen column as LocalDate object
      */
     public LocalDate getLocalDate(String col) {
-        String s = getValue(col);
-        return s == null ? null : LocalDate.parse(s);
+        return getLocalDate(getIndex(col));
     }
 
     /**
+     * Thread safe alternative to getDate(String, DateFormat)
      * @param col Name of column to fetch value from
-     * @return Returns fetched value from chosen column as YearMonth
+     * @param formatter Format of the value
+     * @return Returns fetched value from chosen column as LocalDate object
+     */
+    public LocalDate getLocalDate(String col, DateTimeFormatter formatter) {
+        return getLocalDate(getIndex(col), formatter);
+    }
+
+    /**
+     * @param col Name of column to fetch value from
+     * @return Returns fetched yyyy-MM value from chosen column as YearMonth
      */
     public YearMonth getYearMonth(String col) {
-        String s = getValue(col);
-        return s == null ? null : YearMonth.parse(s);
+        return getYearMonth(getIndex(col));
+    }
+
+    /**
+     * @param col Name of column to fetch value from
+     * @param formatter Format of the value
+     * @return Returns fetched value from chosen column as YearMonth
+     */
+    public YearMonth getYearMonth(String col, DateTimeFormatter formatter) {
+        return getYearMonth(getIndex(col), formatter);
+    }
+
+    /**
+     * @param col Name of column to fetch value from
+     * @return Returns fetched value, shared with equal values of the same read
+     */
+    public String getStringIntern(String col) {
+        return getStringIntern(getIndex(col));
     }
 
     /* INTEGER BASED GETS */
+    // Rows of a read intern through the interner of the file, straight from the line buffer in lazy mode. Rows
+    // created outside a read fall back to String.intern()
     public String getStringIntern(int col) {
-        String s = getValue(col);
-        return s == null ? null : s.intern();
+        if (interner == null) {
+            String s = getValue(col);
+            return s == null ? null : s.intern();
+        }
+        if (isRaw(col)) {
+            int start = bounds[2 * col];
+            int end = bounds[2 * col + 1];
+            return tokenizer.isNull(buf, start, end) ? null : interner.intern(buf, start, end);
+        }
+        return interner.intern(getValue(col));
     }
 
     public String getString(int col) {
@@ -240,13 +481,121 @@ public class DataRow {
     }
 
     public LocalDate getLocalDate(int col) {
+        return getLocalDate(col, null);
+    }
+
+    public LocalDate getLocalDate(int col, DateTimeFormatter formatter) {
+        if (isRaw(col)) {
+            return isNull(col) ? null : localDate(col, chars, bounds[2 * col], bounds[2 * col + 1], formatter);
+        }
         String s = getValue(col);
-        return s == null ? null : LocalDate.parse(s);
+        return s == null ? null : localDate(col, s, 0, s.length(), formatter);
     }
 
     public YearMonth getYearMonth(int col) {
+        return getYearMonth(col, null);
+    }
+
+    public YearMonth getYearMonth(int col, DateTimeFormatter formatter) {
+        if (isRaw(col)) {
+            return isNull(col) ? null : yearMonth(col, chars, bounds[2 * col], bounds[2 * col + 1], formatter);
+        }
+        String s = getValue(col);
+        return s == null ? null : yearMonth(col, s, 0, s.length(), formatter);
+    }
+
+    /* PRIMITIVE GETS */
+    // Parsed straight from the token, or from the line buffer in lazy mode, without boxing. A null token returns the
+    // default value
+
+    public boolean isNull(int col) {
+        if (isRaw(col)) {
+            return tokenizer.isNull(buf, bounds[2 * col], bounds[2 * col + 1]);
+        }
+        return getValue(col) == null;
+    }
+
+    public boolean isNull(String col) {
+        return isNull(getIndex(col));
+    }
+
+    public int getInt(int col, int defaultValue) {
+        if (isRaw(col)) {
+            return isNull(col) ? defaultValue : CharParser.parseInt(chars, bounds[2 * col], bounds[2 * col + 1]);
+        }
         String s = getValue(col);
-        return s == null ? null : YearMonth.parse(s);
+        return s == null ? defaultValue : CharParser.parseInt(s, 0, s.length());
+    }
+
+    public int getInt(String col, int defaultValue) {
+        return getInt(getIndex(col), defaultValue);
+    }
+
+    public long getLong(int col, long defaultValue) {
+        if (isRaw(col)) {
+            return isNull(col) ? defaultValue : CharParser.parseLong(chars, bounds[2 * col], bounds[2 * col + 1]);
+        }
+        String s = getValue(col);
+        return s == null ? defaultValue : CharParser.parseLong(s, 0, s.length());
+    }
+
+    public long getLong(String col, long defaultValue) {
+        return getLong(getIndex(col), defaultValue);
+    }
+
+    public double getDouble(int col, double defaultValue) {
+        if (isRaw(col)) {
+            return isNull(col) ? defaultValue : CharParser.parseDouble(chars, bounds[2 * col], bounds[2 * col + 1]);
+        }
+        String s = getValue(col);
+        return s == null ? defaultValue : CharParser.parseDouble(s, 0, s.length());
+    }
+
+    public double getDouble(String col, double defaultValue) {
+        return getDouble(getIndex(col), defaultValue);
+    }
+
+    public boolean getBoolean(int col, boolean defaultValue) {
+        if (isRaw(col)) {
+            return isNull(col) ? defaultValue : CharParser.parseBoolean(chars, bounds[2 * col], bounds[2 * col + 1]);
+        }
+        String s = getValue(col);
+        return s == null ? defaultValue : CharParser.parseBoolean(s, 0, s.length());
+    }
+
+    public boolean getBoolean(String col, boolean defaultValue) {
+        return getBoolean(getIndex(col), defaultValue);
+    }
+
+    private LocalDate localDate(int col, CharSequence s, int start, int end, DateTimeFormatter formatter) {
+        if (dates == null) {
+            return DateParser.parseLocalDate(s, start, end, formatter);
+        }
+        return dateParser(col).localDate(s, start, end, formatter);
+    }
+
+    private YearMonth yearMonth(int col, CharSequence s, int start, int end, DateTimeFormatter formatter) {
+        if (dates == null) {
+            return DateParser.parseYearMonth(s, start, end, formatter);
+        }
+        return dateParser(col).yearMonth(s, start, end, formatter);
+    }
+
+    private DateParser dateParser(int col) {
+        if (col >= dates.length) {
+            dates = Arrays.copyOf(dates, Math.max(col + 1, columns.size()));
+        }
+        if (dates[col] == null) {
+            dates[col] = new DateParser();
+        }
+        return dates[col];
+    }
+
+    /**
+     * @return true if a column of a lazy row has not been cut into a token, so it can be parsed from the buffer
+     */
+    private boolean isRaw(int col) {
+        return tokenizer != null && cut[col] != generation;
     }
 
     /**
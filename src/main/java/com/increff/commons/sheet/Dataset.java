@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rows and errors of all the files of a dataset, merged in the order of the files
+ */
+public class Dataset<T> {
+
+    private final List<String> files = new ArrayList<>();
+    private final ArrayList<T> data = new ArrayList<>();
+    private final List<FileRowError> errors = new ArrayList<>();
+
+    /**
+     * Allocate the merged rows once, when the row count of all files is known
+     *
+     * @param rows Number of rows of all files
+     */
+    void ensureCapacity(int rows) {
+        data.ensureCapacity(rows);
+    }
+
+    void add(String file, List<T> rows, List<RowError> rowErrors) {
+        files.add(file);
+        data.addAll(rows);
+        for (RowError error : rowErrors) {
+            errors.add(new FileRowError(file, error.getRow(), error.getError()));
+        }
+    }
+
+    /**
+     * @return Paths of the files which were read, relative to the base directory of the FileSystem
+     */
+    public List<String> getFiles() {
+        return files;
+    }
+
+    public List<T> getData() {
+        return data;
+    }
+
+    /**
+     * @return Errors of all files, with row numbers counted within each file
+     */
+    public List<FileRowError> getErrors() {
+        return errors;
+    }
+}
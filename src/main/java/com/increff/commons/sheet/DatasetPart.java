@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+/**
+ * Part file written by a PartitionedWriter
+ */
+public class DatasetPart {
+
+    private final String file;
+    private final long rows;
+    private final long bytes;
+
+    public DatasetPart(String file, long rows, long bytes) {
+        this.file = file;
+        this.rows = rows;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return Name of the file, within the directory of the dataset
+     */
+    public String getFile() {
+        return file;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Parses dates and year-months from a range of characters. ISO values (yyyy-MM-dd and yyyy-MM) are read by a fixed
+ * format parser, and anything else falls back to LocalDate.parse and YearMonth.parse, so the same input is accepted
+ * and fails with the same messages. Values of other formats are parsed with a DateTimeFormatter, which unlike
+ * DateFormat is immutable and safe to share between threads.
+ * <p>
+ * An instance also keeps a small memo of the values of one column, keyed on their characters, as date columns repeat
+ * a few values over many rows. It is not thread safe and is meant to be held per row and column
+ */
+final class DateParser {
+
+    private static final int MEMO_SIZE = 32;
+
+    private final char[][] keys = new char[MEMO_SIZE][];
+    private final Object[] values = new Object[MEMO_SIZE];
+    // Type and formatter the memo was filled with
+    private Class<?> type;
+    private DateTimeFormatter formatter;
+
+    /**
+     * @param formatter Format of the value, null for ISO yyyy-MM-dd
+     */
+    LocalDate localDate(CharSequence s, int start, int end, DateTimeFormatter formatter) {
+        return memo(s, start, end, LocalDate.class, formatter);
+    }
+
+    /**
+     * @param formatter Format of the value, null for ISO yyyy-MM
+     */
+    YearMonth yearMonth(CharSequence s, int start, int end, DateTimeFormatter formatter) {
+        return memo(s, start, end, YearMonth.class, formatter);
+    }
+
+    private <V> V memo(CharSequence s, int start, int end, Class<V> type, DateTimeFormatter formatter) {
+        if (type != this.type || formatter != this.formatter) {
+            for (int i = 0; i < MEMO_SIZE; i++) {
+                keys[i] = null;
+                values[i] = null;
+            }
+            this.type = type;
+            this.formatter = formatter;
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + s.charAt(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & (MEMO_SIZE - 1);
+        char[] key = keys[slot];
+        if (key != null && matches(key, s, start, end)) {
+            return type.cast(values[slot]);
+        }
+
+        V value = type.cast(type == LocalDate.class ? parseLocalDate(s, start, end, formatter)
+                : parseYearMonth(s, start, end, formatter));
+        if (key == null || key.length != end - start) {
+            key = new char[end - start];
+            keys[slot] = key;
+        }
+        for (int i = start; i < end; i++) {
+            key[i - start] = s.charAt(i);
+        }
+        values[slot] = value;
+        return value;
+    }
+
+    /**
+     * @param formatter Format of the value, null for ISO yyyy-MM-dd
+     */
+    static LocalDate parseLocalDate(CharSequence s, int start, int end, DateTimeFormatter formatter) {
+        if (formatter != null) {
+            return LocalDate.parse(s.subSequence(start, end), formatter);
+        }
+        if (end - start == 10 && s.charAt(start + 4) == '-' && s.charAt(start + 7) == '-') {
+            int year = digits(s, start, 4);
+            int month = digits(s, start + 5, 2);
+            int day = digits(s, start + 8, 2);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month)) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(s.subSequence(start, end));
+    }
+
+    /**
+     * @param formatter Format of the value, null for ISO yyyy-MM
+     */
+    static YearMonth parseYearMonth(CharSequence s, int start, int end, DateTimeFormatter formatter) {
+        if (formatter != null) {
+            return YearMonth.parse(s.subSequence(start, end), formatter);
+        }
+        if (end - start == 7 && s.charAt(start + 4) == '-') {
+            int year = digits(s, start, 4);
+            int month = digits(s, start + 5, 2);
+            if (year >= 0 && month >= 1 && month <= 12) {
+                return YearMonth.of(year, month);
+            }
+        }
+        return YearMonth.parse(s.subSequence(start, end));
+    }
+
+    static LocalDate parseLocalDate(String s) {
+        return parseLocalDate(s, 0, s.length(), null);
+    }
+
+    static YearMonth parseYearMonth(String s) {
+        return parseYearMonth(s, 0, s.length(), null);
+    }
+
+    /**
+     * @return Value of n decimal digits starting at start, -1 if any of them is not a digit
+     */
+    private static int digits(CharSequence s, int start, int n) {
+        int value = 0;
+        for (int i = start; i < start + n; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean matches(char[] key, CharSequence s, int start, int end) {
+        if (key.length != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (key[i - start] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
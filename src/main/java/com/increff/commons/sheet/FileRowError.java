@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+/**
+ * Error in a row of one of the files of a dataset
+ */
+public class FileRowError extends RowError {
+
+    private String file;
+
+    public FileRowError(String file, int row, String error) {
+        super(row, error);
+        this.file = file;
+    }
+
+    /**
+     * @return Path of the file, relative to the base directory of the FileSystem
+     */
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+}
@@ -12,6 +12,14 @@
 package com.increff.commons.sheet;
 
 import java.io.*;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 /*
  * ImDb Filesystem to read / write files
@@ -19,11 +27,19 @@ import java.io.*;
 public class FileSystem {
 
     private File baseDir;
+    private int parallelism = 4;
 
     public FileSystem(File baseDir) {
         this.baseDir = baseDir;
     }
 
+    /**
+     * @param parallelism Maximum number of files of a dataset read or written at the same time. Defaults to 4
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     /**
      * Write contents of a IDataFile implementation object onto an output stream at specified location 'filePath'
      * @param filePath Path to output stream
@@ -41,10 +57,115 @@ public class FileSystem {
      * @param sheet IDataFile implementation on which to read the data
      */
     public synchronized <T> void read(String filePath, IDataFile<T> sheet) throws Exception {
-        // Load popularityList
-        FileInputStream is = getInputStream(filePath);
-        sheet.read(is);
-        is.close();
+        // Let the sheet read the file directly, so it can memory map it
+        sheet.read(getFile(filePath));
+    }
+
+    /**
+     * Read all files of a dataset, such as the part files written by an upstream job, on a pool of threads. Each file
+     * is read into its own IDataFile, and the rows and errors of the files are merged in the order of the file names.
+     * Files whose name starts with '.' or '_' are metadata, such as _SUCCESS markers, and are skipped
+     *
+     * @param pathPattern Directory, in which case all files with the extension of the IDataFile are read, or a glob
+     *                    pattern in the file name such as "sales/part-*.tsv"
+     * @param factory     Creates a fresh IDataFile for each file
+     * @return Rows and errors of all files, with errors tagged by file
+     */
+    public <T> Dataset<T> readDataset(String pathPattern, Supplier<? extends IDataFile<T>> factory) throws Exception {
+        List<File> files = listFiles(pathPattern, factory.get().getFileExtension());
+        Dataset<T> dataset = new Dataset<>();
+        if (files.isEmpty()) {
+            return dataset;
+        }
+
+        ExecutorService pool = ThreadPools.newFixedPool(Math.min(parallelism, files.size()), "dataset-reader");
+        try {
+            List<Future<IDataFile<T>>> futures = new ArrayList<>();
+            for (File file : files) {
+                futures.add(pool.submit(() -> {
+                    IDataFile<T> sheet = factory.get();
+                    sheet.read(file);
+                    return sheet;
+                }));
+            }
+            List<IDataFile<T>> sheets = new ArrayList<>();
+            int rows = 0;
+            for (int i = 0; i < files.size(); i++) {
+                IDataFile<T> sheet;
+                try {
+                    sheet = ThreadPools.await(futures.get(i));
+                } catch (Exception e) {
+                    throw new SheetException("Error reading " + getPath(files.get(i)) + ": " + e.getMessage(), e);
+                }
+                sheets.add(sheet);
+                rows += sheet.getData().size();
+            }
+            futures.clear();
+            // Merge into a list sized once, releasing each file once merged instead of holding every part until the end
+            dataset.ensureCapacity(rows);
+            for (int i = 0; i < files.size(); i++) {
+                IDataFile<T> sheet = sheets.set(i, null);
+                dataset.add(getPath(files.get(i)), sheet.getData(), sheet.getErrors());
+            }
+            return dataset;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Open a writer splitting rows into part files in a directory, written on a pool of setParallelism() threads.
+     * The directory is created if needed, and the manifest and the part files of a previous write in the same format
+     * are deleted. Other files in the directory are kept
+     *
+     * @param dirPath Directory of the dataset
+     * @param factory Creates a fresh IDataFile to encode each part
+     * @return Writer of the rows, to be closed once done
+     */
+    public <T> PartitionedWriter<T> openPartitionedWriter(String dirPath, Supplier<? extends IDataFile<T>> factory)
+            throws SheetException {
+        File dir = getFile(dirPath);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new SheetException("Could not create directory: " + dir);
+        }
+        String extension = factory.get().getFileExtension();
+        File[] children = dir.listFiles();
+        for (File child : children == null ? new File[0] : children) {
+            String name = child.getName();
+            if (child.isFile() && (PartitionedWriter.isPartFile(name, extension)
+                    || name.equals(PartitionedWriter.MANIFEST_FILE))) {
+                child.delete();
+            }
+        }
+        return new PartitionedWriter<>(dir, factory, parallelism);
+    }
+
+    /**
+     * List the data files matching a path pattern, sorted by name
+     */
+    private List<File> listFiles(String pathPattern, String extension) throws SheetException {
+        File file = getFile(pathPattern);
+        File dir = file.isDirectory() ? file : file.getParentFile();
+        String glob = file.isDirectory() ? "*" + extension : file.getName();
+        File[] children = dir == null ? null : dir.listFiles();
+        if (children == null) {
+            throw new SheetException("Directory not found: " + dir);
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        List<File> files = new ArrayList<>();
+        for (File child : children) {
+            String name = child.getName();
+            if (child.isFile() && !name.startsWith(".") && !name.startsWith("_") && matcher.matches(Paths.get(name))) {
+                files.add(child);
+            }
+        }
+        files.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return files;
+    }
+
+    private String getPath(File file) {
+        return baseDir.toPath().relativize(file.toPath()).toString();
     }
 
     /**
@@ -60,15 +181,6 @@ public class FileSystem {
         return new FileOutputStream(file, false);
     }
 
-    /**
-     * Return file a FileInputStream for reading
-     * @param filePath Path to input stream file
-     * @return FileInputStream object (if exists)
-     */
-    private FileInputStream getInputStream(String filePath) throws FileNotFoundException {
-        return new FileInputStream(getFile(filePath));
-    }
-
     private File getFile(String fileName) {
         return new File(baseDir, fileName);
     }
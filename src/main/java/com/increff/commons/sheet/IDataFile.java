@@ -11,24 +11,135 @@
 
 package com.increff.commons.sheet;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 public interface IDataFile<T> {
     public String getFileExtension();
 
     public void setMaxRows(Integer maxRows);
 
-    public void setData(ArrayList<T> data);
+    public void setData(List<T> data);
 
-    public ArrayList<T> getData();
+    public List<T> getData();
+
+    /**
+     * @return Errors of the last read. By default there are none, rows which fail are expected to fail the read
+     */
+    public default List<RowError> getErrors() {
+        return Collections.emptyList();
+    }
 
     public void write(OutputStream os) throws IOException;
 
+    /**
+     * Open a writer to which rows can be appended. By default rows are collected and written with write() when the
+     * writer is closed
+     *
+     * @param os OutputStream to which data is written
+     * @return Writer of the rows
+     */
+    public default RowWriter<T> openWriter(OutputStream os) throws IOException {
+        List<T> rows = new ArrayList<>();
+        return new RowWriter<T>(null) {
+
+            @Override
+            protected void writeRow(T t) {
+                rows.add(t);
+            }
+
+            @Override
+            protected void closeOutput() throws IOException {
+                setData(rows);
+                write(os);
+            }
+        };
+    }
+
     public void read(InputStream is) throws Exception;
 
+    /**
+     * Hand each row read to a consumer. By default all rows are read with read() first
+     *
+     * @param is       InputStream from which data is to be read
+     * @param consumer Consumer which receives the rows
+     */
+    public default void read(InputStream is, IRowConsumer<T> consumer) throws Exception {
+        read(is);
+        for (T t : getData()) {
+            consumer.accept(t);
+        }
+    }
+
+    /**
+     * Read a local file. By default the file is read as a stream
+     *
+     * @param file File from which data is to be read
+     */
+    public default void read(File file) throws Exception {
+        try (InputStream is = new FileInputStream(file)) {
+            read(is);
+        }
+    }
+
+    /**
+     * Open a cursor over the rows of a stream. By default all rows are read with read() first
+     *
+     * @param is InputStream from which data is to be read
+     * @return Cursor over the rows
+     */
+    public default RowCursor<T> openCursor(InputStream is) throws Exception {
+        read(is);
+        Iterator<T> rows = getData().iterator();
+        return new RowCursor<T>() {
+
+            @Override
+            protected boolean fetch() {
+                if (!rows.hasNext()) {
+                    return false;
+                }
+                setCurrent(rows.next());
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Read the columns of a schema into a columnar table. Not supported by default, as rows cannot be mapped to
+     * columns without knowing the format
+     *
+     * @param is     InputStream from which data is to be read
+     * @param schema Columns to read and the types to store them as
+     * @return Table of the rows read
+     */
+    public default ColumnTable readTable(InputStream is, TableSchema schema) throws Exception {
+        throw new SheetException("Columnar reads are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Read the columns of a schema from a local file into a columnar table. By default the file is read as a stream
+     *
+     * @param file   File from which data is to be read
+     * @param schema Columns to read and the types to store them as
+     * @return Table of the rows read
+     */
+    public default ColumnTable readTable(File file, TableSchema schema) throws Exception {
+        try (InputStream is = new FileInputStream(file)) {
+            return readTable(is, schema);
+        }
+    }
+
     public void setProgressMonitor(IProgressMonitor progress);
 
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads lines from a Reader into a reusable char buffer. Unlike BufferedReader.readLine(), no String is created per
+ * line; the current line is exposed as a range [lineStart, lineEnd) of buffer(). The range is only valid until the
+ * next call to nextLine(). Lines are terminated by '\n', '\r' or "\r\n"
+ */
+class LineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader in;
+    private char[] buf;
+    private int pos;
+    private int limit;
+    private int lineStart;
+    private int lineEnd;
+    private boolean skipLF;
+    private boolean eof;
+
+    public LineReader(Reader in) {
+        this.in = in;
+        this.buf = new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Advance to the next line
+     *
+     * @return true if a line was read, false at end of input
+     */
+    public boolean nextLine() throws IOException {
+        if (skipLF) {
+            if (pos == limit) {
+                fill();
+            }
+            if (pos < limit && buf[pos] == '\n') {
+                pos++;
+            }
+            skipLF = false;
+        }
+        int scan = pos;
+        while (true) {
+            for (int i = scan; i < limit; i++) {
+                char c = buf[i];
+                if (c == '\n' || c == '\r') {
+                    lineStart = pos;
+                    lineEnd = i;
+                    pos = i + 1;
+                    skipLF = c == '\r';
+                    return true;
+                }
+            }
+            if (eof) {
+                if (pos == limit) {
+                    return false;
+                }
+                lineStart = pos;
+                lineEnd = limit;
+                pos = limit;
+                return true;
+            }
+            scan = limit - pos;
+            fill();
+        }
+    }
+
+    /**
+     * @return Buffer holding the current line
+     */
+    public char[] buffer() {
+        return buf;
+    }
+
+    /**
+     * @return Index in buffer() of the first character of the current line
+     */
+    public int lineStart() {
+        return lineStart;
+    }
+
+    /**
+     * @return Index in buffer() just past the last character of the current line, excluding the line terminator
+     */
+    public int lineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * @return Current line as a new String
+     */
+    public String line() {
+        return new String(buf, lineStart, lineEnd - lineStart);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Move unread characters to the start of the buffer, growing it if a single line fills it, and read more input
+     */
+    private void fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) {
+            char[] grown = new char[buf.length * 2];
+            System.arraycopy(buf, 0, grown, 0, limit);
+            buf = grown;
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+    }
+
+}
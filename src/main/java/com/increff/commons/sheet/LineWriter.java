@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes text as UTF-8 into a reusable byte buffer. Numbers, booleans and dates are formatted straight into the
+ * buffer, so writing a value does not create a String. Output is flushed to the stream when the buffer is full
+ */
+class LineWriter implements Closeable {
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17
+    };
+    private static final long[] LONG_POW10 = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+            10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+            1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+    // Integers below 2^53 are exact doubles, so m / 10^k is correctly rounded
+    private static final double MAX_EXACT = 9007199254740992.0;
+    // Longest UTF-8 sequence, and longest formatted long
+    private static final int MAX_VALUE_BYTES = 20;
+
+    private final OutputStream out;
+    private final byte[] buf;
+    private int pos;
+
+    /**
+     * @param out        Stream to write to
+     * @param bufferSize Size of the output buffer in bytes
+     */
+    LineWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buf = new byte[Math.max(bufferSize, 64)];
+    }
+
+    void write(CharSequence s) throws IOException {
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            if (pos > buf.length - 4) {
+                flushBuffer();
+            }
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates are replaced, as String.getBytes() does
+                buf[pos++] = '?';
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Write a long as Long.toString() would
+     */
+    void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            write(Long.toString(value));
+            return;
+        }
+        ensure(MAX_VALUE_BYTES);
+        if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        while (digits < LONG_POW10.length && value >= LONG_POW10[digits]) {
+            digits++;
+        }
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        pos += digits;
+    }
+
+    /**
+     * Write a double in the plain notation of Double.toString(). Values with up to 17 significant digits in
+     * [1e-3, 1e7) are written with the fewest fraction digits which read back as the same double, without creating
+     * a String. Other values are written with Double.toString()
+     */
+    void writeDouble(double value) throws IOException {
+        if (value == 0) {
+            write(Double.doubleToRawLongBits(value) < 0 ? "-0.0" : "0.0");
+            return;
+        }
+        double abs = Math.abs(value);
+        if (abs >= 1e-3 && abs < 1e7) {
+            for (int k = 0; k < POW10.length && abs * POW10[k] < MAX_EXACT; k++) {
+                long m = Math.round(abs * POW10[k]);
+                if (m / POW10[k] == abs) {
+                    if (value < 0) {
+                        write("-");
+                    }
+                    writeLong(m / LONG_POW10[k]);
+                    ensure(1 + Math.max(k, 1));
+                    buf[pos++] = '.';
+                    if (k == 0) {
+                        buf[pos++] = '0';
+                    } else {
+                        long fraction = m % LONG_POW10[k];
+                        for (int i = pos + k - 1; i >= pos; i--) {
+                            buf[i] = (byte) ('0' + fraction % 10);
+                            fraction /= 10;
+                        }
+                        pos += k;
+                    }
+                    return;
+                }
+            }
+        }
+        write(Double.toString(value));
+    }
+
+    void writeBoolean(boolean value) throws IOException {
+        write(value ? "true" : "false");
+    }
+
+    /**
+     * Write a date as yyyy-MM-dd, as LocalDate.toString() does for years 0 to 9999
+     */
+    void writeDate(int year, int month, int day) throws IOException {
+        ensure(10);
+        writeDigits(year, 4);
+        buf[pos++] = '-';
+        writeDigits(month, 2);
+        buf[pos++] = '-';
+        writeDigits(day, 2);
+    }
+
+    void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeDigits(int value, int n) {
+        for (int i = pos + n - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        pos += n;
+    }
+
+    private void ensure(int n) throws IOException {
+        if (pos > buf.length - n) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read-only memory mapping of a delimited text file, split into segments which start at line boundaries so they can
+ * be parsed independently. Line terminators are located on the raw bytes, which is valid for ASCII compatible
+ * charsets such as UTF-8
+ */
+class MappedFile implements Closeable {
+
+    private static final int WINDOW = 64 * 1024;
+    private static final long SCAN_CHUNK = 64L * 1024 * 1024;
+    private static final long MAX_SEGMENT = 256L * 1024 * 1024;
+
+    /**
+     * Segments of a file. Segment i spans bytes [bounds[i], bounds[i + 1]) and holds lines[i] records
+     */
+    static class Segments {
+        final long[] bounds;
+        final int[] lines;
+
+        Segments(long[] bounds, int[] lines) {
+            this.bounds = bounds;
+            this.lines = lines;
+        }
+
+        int count() {
+            return bounds.length - 1;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long size;
+
+    public MappedFile(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Map the bytes in [start, end) of the file. The range must be smaller than 2GB
+     */
+    public MappedByteBuffer map(long start, long end) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    }
+
+    /**
+     * @return InputStream over the bytes in [start, end) of the file
+     */
+    public InputStream stream(long start, long end) throws IOException {
+        return new ByteBufferInputStream(map(start, end));
+    }
+
+    /**
+     * @return Position just past the first line terminator at or after 'from', or the file size if there is none
+     */
+    public long skipLine(long from) throws IOException {
+        for (long p = from; p < size; p += WINDOW) {
+            ByteBuffer b = map(p, Math.min(size, p + WINDOW + 1));
+            for (int i = 0; i < b.limit() && p + i < size; i++) {
+                byte c = b.get(i);
+                if (c == '\n') {
+                    return p + i + 1;
+                }
+                if (c == '\r') {
+                    return i + 1 < b.limit() && b.get(i + 1) == '\n' ? p + i + 2 : p + i + 1;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Split [start, size) into at least minSegments segments, each starting just after a '\n'. Line counts are not
+     * computed; see countLines()
+     */
+    public Segments split(long start, int minSegments) throws IOException {
+        int n = segmentCount(start, minSegments);
+        long[] bounds = new long[n + 1];
+        bounds[0] = start;
+        int k = 1;
+        for (int i = 1; i < n; i++) {
+            long target = Math.max(start + (size - start) * i / n, bounds[k - 1]);
+            long bound = nextLine(target);
+            if (bound > bounds[k - 1] && bound < size) {
+                bounds[k++] = bound;
+            }
+        }
+        bounds[k++] = size;
+        bounds = Arrays.copyOf(bounds, k);
+        return new Segments(bounds, new int[k - 1]);
+    }
+
+    /**
+     * Scan the whole file once, tracking CSV quotes, and split it into segments which start at record boundaries.
+     * The header record forms segment 0. Lines inside quoted fields are not treated as record boundaries.
+     * Quotes and escapes are tracked as opencsv's CSVParser does: an escape or a doubled quote applies inside quotes
+     * and within a field which has started, and neither looks past the end of a line
+     *
+     * @param minSegments Minimum number of segments after the header
+     * @param separator   Separator character
+     * @param quote       Quote character
+     * @param escape      Escape character
+     */
+    public Segments splitQuoted(int minSegments, char separator, char quote, char escape) throws IOException {
+        long[] bounds = new long[16];
+        int[] lines = new int[16];
+        int k = 1;
+        boolean inQuotes = false;
+        boolean inField = false;
+        // An escape or quote waiting for the next character, which decides whether it escapes it
+        boolean pendingEscape = false;
+        boolean pendingQuote = false;
+        boolean header = true;
+        long segmentSize = 0;
+        long target = 0;
+        int records = 0;
+        long lastEnd = 0;
+        for (long p = 0; p < size; p += SCAN_CHUNK) {
+            ByteBuffer b = map(p, Math.min(size, p + SCAN_CHUNK));
+            int limit = b.limit();
+            for (int i = 0; i < limit; i++) {
+                byte c = b.get(i);
+                if (pendingEscape) {
+                    pendingEscape = false;
+                    if (c == quote || c == escape) {
+                        continue;
+                    }
+                } else if (pendingQuote) {
+                    pendingQuote = false;
+                    if (c == quote) {
+                        inField = !inField;
+                        continue;
+                    }
+                    inQuotes = !inQuotes;
+                    inField = !inField;
+                }
+                if (c == escape) {
+                    pendingEscape = inQuotes || inField;
+                } else if (c == quote) {
+                    if (inQuotes || inField) {
+                        pendingQuote = true;
+                    } else {
+                        inQuotes = true;
+                        inField = true;
+                    }
+                } else if (c == separator) {
+                    inField = inQuotes;
+                } else if (c != '\n' && c != '\r') {
+                    inField = true;
+                } else if (!inQuotes && (c == '\n' || !isNext(b, i, p, '\n'))) {
+                    inField = false;
+                    long end = p + i + 1;
+                    lastEnd = end;
+                    if (header) {
+                        header = false;
+                        bounds[0] = 0;
+                        bounds[1] = end;
+                        lines[0] = 1;
+                        k = 2;
+                        segmentSize = (size - end) / segmentCount(end, minSegments);
+                        target = end + segmentSize;
+                        continue;
+                    }
+                    records++;
+                    if (end >= target && end < size) {
+                        if (k + 1 >= bounds.length) {
+                            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                            lines = Arrays.copyOf(lines, lines.length * 2);
+                        }
+                        lines[k - 1] = records;
+                        bounds[k++] = end;
+                        records = 0;
+                        target = end + segmentSize;
+                    }
+                }
+            }
+        }
+        if (header) {
+            return new Segments(new long[]{0, size}, new int[]{size > 0 ? 1 : 0});
+        }
+        if (lastEnd < size) {
+            records++;
+        }
+        if (bounds[k - 1] < size) {
+            lines[k - 1] = records;
+            bounds[k++] = size;
+        }
+        return new Segments(Arrays.copyOf(bounds, k), Arrays.copyOf(lines, k - 1));
+    }
+
+    /**
+     * Count the lines in [start, end) the way LineReader splits them
+     */
+    public int countLines(long start, long end) throws IOException {
+        int count = 0;
+        for (long p = start; p < end; p += SCAN_CHUNK) {
+            ByteBuffer b = map(p, Math.min(end, p + SCAN_CHUNK));
+            int limit = b.limit();
+            for (int i = 0; i < limit; i++) {
+                byte c = b.get(i);
+                if (c == '\n' || (c == '\r' && !isNext(b, i, p, '\n'))) {
+                    count++;
+                }
+            }
+        }
+        if (end > start) {
+            ByteBuffer last = map(end - 1, end);
+            byte c = last.get(0);
+            if (c != '\n' && c != '\r') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int segmentCount(long start, int minSegments) {
+        long bySize = (size - start + MAX_SEGMENT - 1) / MAX_SEGMENT;
+        return (int) Math.max(1, Math.max(minSegments, bySize));
+    }
+
+    /**
+     * @return Position just past the first '\n' at or after 'from', or the file size if there is none
+     */
+    private long nextLine(long from) throws IOException {
+        for (long p = from; p < size; p += WINDOW) {
+            ByteBuffer b = map(p, Math.min(size, p + WINDOW));
+            for (int i = 0; i < b.limit(); i++) {
+                if (b.get(i) == '\n') {
+                    return p + i + 1;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Check whether the byte after index i of a mapped chunk starting at p is c, looking past the chunk if needed
+     */
+    private boolean isNext(ByteBuffer b, int i, long p, char c) throws IOException {
+        if (i + 1 < b.limit()) {
+            return b.get(i + 1) == c;
+        }
+        return p + i + 1 < size && map(p + i + 1, p + i + 2).get(0) == c;
+    }
+
+    /**
+     * InputStream reading the remaining bytes of a buffer
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+
+}
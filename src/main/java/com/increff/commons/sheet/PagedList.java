@@ -11,8 +11,10 @@
 
 package com.increff.commons.sheet;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Creates a Paged list which is a list of lists. Each sub-list's size is less or equal pagesize
@@ -23,11 +25,13 @@ import java.util.List;
  * 1. It is increasing with a much higher block size
  * 2. It is not copying data from previous version to new
  * So by creating sub-lists of bigger block size, PagedList proves itself to be efficient when handling large size data
+ * PagedList is itself a random access List over its pages, so it can be handed out directly without merging the pages
  */
-public class PagedList<T> {
+public class PagedList<T> extends AbstractList<T> implements RandomAccess {
 
-    private int pageSize = 100000;
+    private static final int PAGE_SIZE = 100000;
     private List<T> curPage;
+    private int size;
 
     private List<List<T>> pages;
 
@@ -39,12 +43,55 @@ public class PagedList<T> {
     /**
      * Add an element to the Paged List. If current page is full, creates a new page
      * @param t Element to be added
+     * @return true, as specified by List.add
      */
-    public void add(T t) {
-        if (curPage.size() == pageSize) {
+    @Override
+    public boolean add(T t) {
+        if (curPage.size() == PAGE_SIZE) {
             createNewPage();
         }
         curPage.add(t);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Return the element at a given index by looking up its page
+     * @param index Index of element
+     * @return Element at the index
+     */
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return pages.get(index / PAGE_SIZE).get(index % PAGE_SIZE);
+    }
+
+    /**
+     * Replace the element at a given index
+     * @param index Index of element
+     * @param t New element
+     * @return Element previously at the index
+     */
+    @Override
+    public T set(int index, T t) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return pages.get(index / PAGE_SIZE).set(index % PAGE_SIZE, t);
+    }
+
+    /**
+     * Remove all elements and pages
+     */
+    @Override
+    public void clear() {
+        pages.clear();
+        size = 0;
+        modCount++;
+        createNewPage();
     }
 
     /**
@@ -70,7 +117,7 @@ public class PagedList<T> {
      * Create a new page and add to Paged List
      */
     private void createNewPage() {
-        curPage = new ArrayList<>(pageSize);
+        curPage = new ArrayList<>(PAGE_SIZE);
         pages.add(curPage);
     }
 
@@ -78,12 +125,9 @@ public class PagedList<T> {
      * Returns total number of elements stored in all pages of the Paged List
      * @return Count of elements
      */
+    @Override
     public int size() {
-        int sum = 0;
-        for (List<T> page : pages) {
-            sum += page.size();
-        }
-        return sum;
+        return size;
     }
 
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Cursor which maps rows on a pool of worker threads. The calling thread reads raw records and cuts them into
+ * batches, workers map each batch with their own mapper state, and batches are handed back in input order.
+ * A bounded number of batches is kept in flight, so memory use does not grow with the size of the input
+ *
+ * @param <R> Type of the raw record read from the input
+ * @param <T> Type of the mapped row
+ */
+abstract class ParallelRowCursor<R, T> extends BatchCursor<T> {
+
+    private static final int BATCH_SIZE = 4096;
+
+    /**
+     * Maps raw records to rows. A mapper is only used by one thread at a time, so it may hold scratch state
+     */
+    interface RowMapper<R, T> {
+        T map(R raw, int row) throws Exception;
+    }
+
+    private final ExecutorService pool;
+    private final int window;
+    private final long readLimit;
+    private final ArrayDeque<Future<RowBatch<T>>> pending;
+    private long read;
+    private boolean exhausted;
+
+    protected ParallelRowCursor(int parallelism, Integer maxRows, IProgressMonitor progress, List<RowError> errors) {
+        super(maxRows, progress, errors);
+        this.pool = ThreadPools.newFixedPool(parallelism, "sheet-reader");
+        this.window = parallelism * 2;
+        // Read one record past maxRows, so that the limit is reported once all rows before it are delivered
+        this.readLimit = maxRows + 1L;
+        this.pending = new ArrayDeque<>();
+    }
+
+    /**
+     * Read the next raw record on the calling thread
+     *
+     * @return Raw record, null at end of input
+     */
+    protected abstract R readRaw() throws Exception;
+
+    /**
+     * @return New mapper for a batch
+     */
+    protected abstract RowMapper<R, T> newMapper();
+
+    /**
+     * Close the underlying input
+     */
+    protected abstract void closeInput() throws IOException;
+
+    @Override
+    protected RowBatch<T> nextBatch() throws Exception {
+        while (!exhausted && pending.size() < window) {
+            submitBatch();
+        }
+        Future<RowBatch<T>> future = pending.poll();
+        return future == null ? null : ThreadPools.await(future);
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        closeInput();
+    }
+
+    private void submitBatch() throws Exception {
+        List<R> raws = new ArrayList<>(BATCH_SIZE);
+        int start = (int) read + 1;
+        while (raws.size() < BATCH_SIZE) {
+            R raw = read < readLimit ? readRaw() : null;
+            if (raw == null) {
+                exhausted = true;
+                break;
+            }
+            raws.add(raw);
+            read++;
+        }
+        if (!raws.isEmpty()) {
+            pending.add(pool.submit(() -> mapBatch(raws, start)));
+        }
+    }
+
+    private RowBatch<T> mapBatch(List<R> raws, int start) {
+        RowMapper<R, T> mapper = newMapper();
+        RowBatch<T> batch = new RowBatch<>(raws.size());
+        for (int i = 0; i < raws.size(); i++) {
+            try {
+                batch.add(mapper.map(raws.get(i), start + i));
+            } catch (Exception e) {
+                batch.addError(e.getMessage());
+            }
+        }
+        return batch;
+    }
+
+}
@@ -0,0 +1,311 @@
+package com.increff.commons.sheet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.avro.AvroReadSupport;
+import org.apache.parquet.avro.AvroSchemaConverter;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.OriginalType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+/**
+ * Schema of a parquet file class compiled once per process: the parquet and Avro schemas, and the positions of the
+ * fields needing string and date conversions. Read plans for a file schema and a set of columns are compiled on first
+ * use and cached as well, so repeated reads skip schema conversion and validation
+ */
+final class ParquetCodec {
+
+    private static final int MAX_READ_PLANS = 64;
+    private static final ConcurrentHashMap<Class<?>, ParquetCodec> CODECS = new ConcurrentHashMap<>();
+
+    private final MessageType messageType;
+    private final Schema schema;
+    private final String[] columns;
+    private final Set<String> binaryNames = new HashSet<>();
+    private final Set<String> dateNames = new HashSet<>();
+    private final int[] binaryFields;
+    private final int[] dateFields;
+    private final ConcurrentHashMap<ReadKey, ReadPlan> readPlans = new ConcurrentHashMap<>();
+
+    /**
+     * Return the codec of a file class, compiling it on first use. The schema must be the same for all instances of
+     * the class
+     *
+     * @param fileClass Class of the parquet file
+     * @param schema    Supplies the parquet schema of the class
+     * @return Compiled codec
+     */
+    static ParquetCodec get(Class<?> fileClass, Supplier<MessageType> schema) {
+        ParquetCodec codec = CODECS.get(fileClass);
+        return codec != null ? codec : CODECS.computeIfAbsent(fileClass, c -> new ParquetCodec(schema.get()));
+    }
+
+    private ParquetCodec(MessageType messageType) {
+        this.messageType = messageType;
+        this.schema = new AvroSchemaConverter().convert(messageType);
+        List<Type> fields = messageType.getFields();
+        columns = new String[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            Type field = fields.get(i);
+            columns[i] = field.getName();
+            if (field.asPrimitiveType().getPrimitiveTypeName().equals(PrimitiveType.PrimitiveTypeName.BINARY)) {
+                binaryNames.add(field.getName());
+            } else if (OriginalType.DATE.equals(field.getOriginalType())) {
+                dateNames.add(field.getName());
+            }
+        }
+        binaryFields = positions(schema, binaryNames);
+        dateFields = positions(schema, dateNames);
+    }
+
+    Schema getSchema() {
+        return schema;
+    }
+
+    MessageType getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * @return Names of the columns of the schema, as a copy
+     */
+    String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * @return New encoder for a single writer. Encoders are not thread-safe
+     */
+    RecordEncoder newEncoder() {
+        return new RecordEncoder();
+    }
+
+    /**
+     * Return the plan to read columns from a file, validating the file schema against the schema of the class the
+     * first time it is seen
+     *
+     * @param fileSchema Schema from the footer of the file
+     * @param columns    Names of the columns to read
+     * @return Compiled read plan
+     */
+    ReadPlan readPlan(MessageType fileSchema, String[] columns) throws SheetException {
+        ReadKey key = new ReadKey(fileSchema, columns);
+        ReadPlan plan = readPlans.get(key);
+        if (plan != null) {
+            return plan;
+        }
+        AbstractParquetFile.validateHeaders(new AvroSchemaConverter().convert(fileSchema), schema);
+        plan = new ReadPlan(fileSchema, columns);
+        if (readPlans.size() >= MAX_READ_PLANS) {
+            readPlans.clear();
+        }
+        readPlans.put(key, plan);
+        return plan;
+    }
+
+    private static int[] positions(Schema schema, Set<String> names) {
+        int[] positions = new int[names.size()];
+        int i = 0;
+        for (Schema.Field field : schema.getFields()) {
+            if (names.contains(field.name())) {
+                positions[i++] = field.pos();
+            }
+        }
+        return Arrays.copyOf(positions, i);
+    }
+
+    /**
+     * Projection of a file schema onto a set of columns, with the Hadoop configuration requesting it from the Avro
+     * reader and the positions of the projected fields needing conversion
+     */
+    final class ReadPlan {
+        private final MessageType projection;
+        private final Configuration conf;
+        private final int[] binaryFields;
+        private final int[] dateFields;
+
+        private ReadPlan(MessageType fileSchema, String[] columns) throws SheetException {
+            List<Type> projected = new ArrayList<>();
+            for (String column : columns) {
+                if (!fileSchema.containsField(column)) {
+                    throw new SheetException("Column '" + column + "' is not present in the file");
+                }
+                projected.add(fileSchema.getType(column));
+            }
+            projection = new MessageType(fileSchema.getName(), projected);
+
+            Schema avroProjection = new AvroSchemaConverter().convert(projection);
+            conf = new Configuration();
+            AvroReadSupport.setRequestedProjection(conf, avroProjection);
+            AvroReadSupport.setAvroReadSchema(conf, avroProjection);
+            binaryFields = positions(avroProjection, binaryNames);
+            dateFields = positions(avroProjection, dateNames);
+        }
+
+        MessageType getProjection() {
+            return projection;
+        }
+
+        /**
+         * @return Configuration for the Avro reader. It is shared by all reads using this plan and must not be changed
+         */
+        Configuration getConf() {
+            return conf;
+        }
+
+        /**
+         * Convert strings and dates of a record read with this plan to their Java representation. Null strings are
+         * read as empty strings
+         *
+         * @param record   Record of the projection
+         * @param interner Interner to share strings through, null to decode each value
+         */
+        void decode(GenericRecord record, StringInterner interner) {
+            for (int pos : binaryFields) {
+                Object value = record.get(pos);
+                if (value == null) {
+                    record.put(pos, "");
+                } else if (interner == null) {
+                    record.put(pos, StandardCharsets.UTF_8.decode((ByteBuffer) value).toString());
+                } else {
+                    record.put(pos, interner.intern((ByteBuffer) value));
+                }
+            }
+            for (int pos : dateFields) {
+                Object value = record.get(pos);
+                if (value != null) {
+                    record.put(pos, LocalDate.ofEpochDay((int) value));
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts strings and dates of records to their parquet representation before they are written. Strings are
+     * encoded into a scratch buffer per field, which is reused as the writer copies whatever it retains, and boxed
+     * epoch days are cached, so encoding a record does not allocate
+     */
+    final class RecordEncoder {
+        private static final int EPOCH_DAY_CACHE = 1024;
+
+        private final byte[][] scratch = new byte[binaryFields.length][];
+        private final ByteBuffer[] buffers = new ByteBuffer[binaryFields.length];
+        private final Integer[] epochDays = new Integer[EPOCH_DAY_CACHE];
+
+        private RecordEncoder() {
+        }
+
+        /**
+         * @param record Record of the full schema, which is written before the next call
+         */
+        void encode(GenericRecord record) {
+            for (int i = 0; i < binaryFields.length; i++) {
+                Object value = record.get(binaryFields[i]);
+                if (value != null) {
+                    record.put(binaryFields[i], encodeString(i, (String) value));
+                }
+            }
+            for (int i = 0; i < dateFields.length; i++) {
+                Object value = record.get(dateFields[i]);
+                if (value != null) {
+                    record.put(dateFields[i], boxEpochDay((int) ((LocalDate) value).toEpochDay()));
+                }
+            }
+        }
+
+        private Integer boxEpochDay(int epochDay) {
+            int slot = epochDay & (EPOCH_DAY_CACHE - 1);
+            Integer boxed = epochDays[slot];
+            if (boxed == null || boxed != epochDay) {
+                boxed = epochDay;
+                epochDays[slot] = boxed;
+            }
+            return boxed;
+        }
+
+        private ByteBuffer encodeString(int field, String s) {
+            byte[] buf = scratch[field];
+            if (buf == null || buf.length < 3 * s.length()) {
+                buf = new byte[Math.max(64, 3 * s.length())];
+                scratch[field] = buf;
+                buffers[field] = ByteBuffer.wrap(buf);
+            }
+            ByteBuffer buffer = buffers[field];
+            buffer.clear();
+            buffer.limit(encodeUtf8(s, buf));
+            return buffer;
+        }
+    }
+
+    /**
+     * Encode a string as UTF-8, replacing unpaired surrogates with '?' as the JDK encoder does
+     *
+     * @param s   String to encode
+     * @param dst Buffer of at least three bytes per char
+     * @return Number of bytes written
+     */
+    static int encodeUtf8(String s, byte[] dst) {
+        int n = 0;
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                dst[n++] = (byte) c;
+            } else if (c < 0x800) {
+                dst[n++] = (byte) (0xC0 | (c >> 6));
+                dst[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    dst[n++] = (byte) (0xF0 | (cp >> 18));
+                    dst[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    dst[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    dst[n++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    dst[n++] = '?';
+                }
+            } else {
+                dst[n++] = (byte) (0xE0 | (c >> 12));
+                dst[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                dst[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return n;
+    }
+
+    private static final class ReadKey {
+        private final MessageType fileSchema;
+        private final String[] columns;
+        private final int hash;
+
+        private ReadKey(MessageType fileSchema, String[] columns) {
+            this.fileSchema = fileSchema;
+            this.columns = columns.clone();
+            this.hash = 31 * fileSchema.hashCode() + Arrays.hashCode(columns);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ReadKey)) {
+                return false;
+            }
+            ReadKey other = (ReadKey) o;
+            return hash == other.hash && Arrays.equals(columns, other.columns) && fileSchema.equals(other.fileSchema);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
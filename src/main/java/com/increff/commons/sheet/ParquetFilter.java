@@ -0,0 +1,278 @@
+package com.increff.commons.sheet;
+
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Typed row filter for parquet reads, for example
+ * <pre>
+ *     and(ge("day", LocalDate.of(2023, 1, 1)), in("channel", 1, 2, 3))
+ * </pre>
+ * Filters are compiled to parquet predicates, so row groups and pages whose statistics (min/max, dictionary or
+ * column index) cannot match are skipped without being read. Values are converted to the physical type of the column:
+ * LocalDate to epoch days for DATE columns and String to UTF-8 for BINARY columns. Values which do not fit the type of
+ * the column, such as a String or a non-integral number for an INT32 column, fail the read with a SheetException
+ */
+public abstract class ParquetFilter {
+
+    private enum Op {
+        EQ, NE, LT, LE, GT, GE, IN, NOT_IN
+    }
+
+    public static ParquetFilter eq(String column, Object value) {
+        return new Comparison(Op.EQ, column, Collections.singletonList(value));
+    }
+
+    public static ParquetFilter ne(String column, Object value) {
+        return new Comparison(Op.NE, column, Collections.singletonList(value));
+    }
+
+    public static ParquetFilter lt(String column, Object value) {
+        return new Comparison(Op.LT, column, Collections.singletonList(value));
+    }
+
+    public static ParquetFilter le(String column, Object value) {
+        return new Comparison(Op.LE, column, Collections.singletonList(value));
+    }
+
+    public static ParquetFilter gt(String column, Object value) {
+        return new Comparison(Op.GT, column, Collections.singletonList(value));
+    }
+
+    public static ParquetFilter ge(String column, Object value) {
+        return new Comparison(Op.GE, column, Collections.singletonList(value));
+    }
+
+    public static ParquetFilter in(String column, Object... values) {
+        return new Comparison(Op.IN, column, Arrays.asList(values));
+    }
+
+    public static ParquetFilter notIn(String column, Object... values) {
+        return new Comparison(Op.NOT_IN, column, Arrays.asList(values));
+    }
+
+    public static ParquetFilter and(ParquetFilter... filters) {
+        return new Logical(true, Arrays.asList(filters));
+    }
+
+    public static ParquetFilter or(ParquetFilter... filters) {
+        return new Logical(false, Arrays.asList(filters));
+    }
+
+    public static ParquetFilter not(ParquetFilter filter) {
+        return new Not(filter);
+    }
+
+    /**
+     * Compile to a parquet predicate, resolving column types against the schema of the file
+     *
+     * @param schema Schema of the file being read
+     * @return Parquet predicate
+     */
+    abstract FilterPredicate toPredicate(MessageType schema) throws SheetException;
+
+    /**
+     * @return Names of the columns the filter refers to
+     */
+    abstract Set<String> getColumns();
+
+    private static class Comparison extends ParquetFilter {
+        private final Op op;
+        private final String column;
+        private final List<Object> values;
+
+        Comparison(Op op, String column, List<Object> values) {
+            this.op = op;
+            this.column = column;
+            this.values = values;
+        }
+
+        @Override
+        FilterPredicate toPredicate(MessageType schema) throws SheetException {
+            if (!schema.containsField(column) || !schema.getType(column).isPrimitive()) {
+                throw new SheetException("Cannot filter on column '" + column + "'");
+            }
+            if (op != Op.EQ && op != Op.NE && values.contains(null)) {
+                throw new SheetException("Null value in filter on column '" + column + "'");
+            }
+            if (values.isEmpty()) {
+                throw new SheetException("No values in filter on column '" + column + "'");
+            }
+            PrimitiveType type = schema.getType(column).asPrimitiveType();
+            switch (type.getPrimitiveTypeName()) {
+                case INT32:
+                    return ordered(FilterApi.intColumn(column), v -> {
+                        long l = toIntegral(type, v);
+                        if (l < Integer.MIN_VALUE || l > Integer.MAX_VALUE) {
+                            throw invalidValue(type, v);
+                        }
+                        return (int) l;
+                    });
+                case INT64:
+                    return ordered(FilterApi.longColumn(column), v -> toIntegral(type, v));
+                case FLOAT:
+                    return ordered(FilterApi.floatColumn(column), v -> toNumber(type, v).floatValue());
+                case DOUBLE:
+                    return ordered(FilterApi.doubleColumn(column), v -> toNumber(type, v).doubleValue());
+                case BINARY:
+                    return ordered(FilterApi.binaryColumn(column), v -> {
+                        if (!(v instanceof CharSequence)) {
+                            throw invalidValue(type, v);
+                        }
+                        return Binary.fromString(v.toString());
+                    });
+                case BOOLEAN:
+                    if (op == Op.LT || op == Op.LE || op == Op.GT || op == Op.GE) {
+                        throw new SheetException("Boolean column '" + column + "' only supports equality filters");
+                    }
+                    return equality(FilterApi.booleanColumn(column), v -> {
+                        if (!(v instanceof Boolean)) {
+                            throw invalidValue(type, v);
+                        }
+                        return (Boolean) v;
+                    });
+                default:
+                    throw new SheetException("Filtering is not supported on column '" + column + "' of type "
+                            + type.getPrimitiveTypeName());
+            }
+        }
+
+        @Override
+        Set<String> getColumns() {
+            return Collections.singleton(column);
+        }
+
+        private <V extends Comparable<V>, C extends Operators.Column<V> & Operators.SupportsLtGt> FilterPredicate
+        ordered(C col, Converter<V> convert) throws SheetException {
+            switch (op) {
+                case LT:
+                    return FilterApi.lt(col, convert(values.get(0), convert));
+                case LE:
+                    return FilterApi.ltEq(col, convert(values.get(0), convert));
+                case GT:
+                    return FilterApi.gt(col, convert(values.get(0), convert));
+                case GE:
+                    return FilterApi.gtEq(col, convert(values.get(0), convert));
+                default:
+                    return equality(col, convert);
+            }
+        }
+
+        private <V extends Comparable<V>, C extends Operators.Column<V> & Operators.SupportsEqNotEq> FilterPredicate
+        equality(C col, Converter<V> convert) throws SheetException {
+            switch (op) {
+                case EQ:
+                    return FilterApi.eq(col, convert(values.get(0), convert));
+                case NE:
+                    return FilterApi.notEq(col, convert(values.get(0), convert));
+                default:
+                    Set<V> set = new HashSet<>();
+                    for (Object v : values) {
+                        set.add(convert(v, convert));
+                    }
+                    return op == Op.IN ? FilterApi.in(col, set) : FilterApi.notIn(col, set);
+            }
+        }
+
+        private static <V> V convert(Object value, Converter<V> convert) throws SheetException {
+            return value == null ? null : convert.apply(value);
+        }
+    }
+
+    private static class Logical extends ParquetFilter {
+        private final boolean and;
+        private final List<ParquetFilter> filters;
+
+        Logical(boolean and, List<ParquetFilter> filters) {
+            if (filters.isEmpty()) {
+                throw new IllegalArgumentException("At least one filter is required");
+            }
+            this.and = and;
+            this.filters = filters;
+        }
+
+        @Override
+        FilterPredicate toPredicate(MessageType schema) throws SheetException {
+            FilterPredicate predicate = filters.get(0).toPredicate(schema);
+            for (int i = 1; i < filters.size(); i++) {
+                FilterPredicate next = filters.get(i).toPredicate(schema);
+                predicate = and ? FilterApi.and(predicate, next) : FilterApi.or(predicate, next);
+            }
+            return predicate;
+        }
+
+        @Override
+        Set<String> getColumns() {
+            Set<String> columns = new HashSet<>();
+            for (ParquetFilter filter : filters) {
+                columns.addAll(filter.getColumns());
+            }
+            return columns;
+        }
+    }
+
+    private static class Not extends ParquetFilter {
+        private final ParquetFilter filter;
+
+        Not(ParquetFilter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        FilterPredicate toPredicate(MessageType schema) throws SheetException {
+            return FilterApi.not(filter.toPredicate(schema));
+        }
+
+        @Override
+        Set<String> getColumns() {
+            return filter.getColumns();
+        }
+    }
+
+    /**
+     * Converts a filter value to the physical type of a column
+     */
+    private interface Converter<V> {
+        V apply(Object value) throws SheetException;
+    }
+
+    /**
+     * @return Value as a long, for LocalDate values and numbers without a fractional part
+     */
+    private static long toIntegral(PrimitiveType type, Object value) throws SheetException {
+        if (value instanceof LocalDate) {
+            return ((LocalDate) value).toEpochDay();
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            if (d == Math.rint(d) && Math.abs(d) < 0x1p63) {
+                return (long) d;
+            }
+        }
+        throw invalidValue(type, value);
+    }
+
+    private static Number toNumber(PrimitiveType type, Object value) throws SheetException {
+        if (!(value instanceof Number)) {
+            throw invalidValue(type, value);
+        }
+        return (Number) value;
+    }
+
+    private static SheetException invalidValue(PrimitiveType type, Object value) {
+        return new SheetException("Invalid filter value '" + value + "' of " + value.getClass().getSimpleName()
+                + " for column '" + type.getName() + "' of type " + type.getPrimitiveTypeName());
+    }
+
+}
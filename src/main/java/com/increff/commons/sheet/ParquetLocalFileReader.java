@@ -0,0 +1,127 @@
+package com.increff.commons.sheet;
+
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Parquet InputFile over a local file. Streams use positional reads on a FileChannel, so the reader can seek straight
+ * to the footer and column chunks without loading the file into memory, and files larger than 2GB are supported
+ */
+public class ParquetLocalFileReader implements InputFile {
+    private final File file;
+
+    public ParquetLocalFileReader(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public long getLength() {
+        return file.length();
+    }
+
+    @Override
+    public SeekableInputStream newStream() throws IOException {
+        return new ChannelInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+
+    private static class ChannelInputStream extends SeekableInputStream {
+        private final FileChannel channel;
+        private final ByteBuffer single = ByteBuffer.allocate(1);
+        private long pos;
+
+        ChannelInputStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public long getPos() {
+            return pos;
+        }
+
+        @Override
+        public void seek(long newPos) {
+            this.pos = newPos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            single.clear();
+            int n = channel.read(single, pos);
+            if (n <= 0) {
+                return -1;
+            }
+            pos++;
+            return single.get(0) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return read(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public int read(ByteBuffer buf) throws IOException {
+            int n = channel.read(buf, pos);
+            if (n > 0) {
+                pos += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void readFully(byte[] bytes) throws IOException {
+            readFully(ByteBuffer.wrap(bytes));
+        }
+
+        @Override
+        public void readFully(byte[] bytes, int start, int len) throws IOException {
+            readFully(ByteBuffer.wrap(bytes, start, len));
+        }
+
+        @Override
+        public void readFully(ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                if (read(buf) < 0) {
+                    throw new EOFException("Reached the end of " + channel + " with " + buf.remaining()
+                            + " bytes left to read");
+                }
+            }
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, length() - pos));
+            pos += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, length() - pos));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private long length() {
+            try {
+                return channel.size();
+            } catch (IOException e) {
+                return pos;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.increff.commons.sheet;
+
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reusable row of a parquet file, filled directly by per-column converters without an intermediate Avro record.
+ * Numeric values are held unboxed and strings are only decoded from UTF-8 when they are accessed. The same instance
+ * is refilled for every record, so values must be copied out within read(ParquetRow)
+ */
+public class ParquetRow {
+
+    private final Map<String, Integer> columns;
+    final long[] longs;
+    final double[] doubles;
+    final Binary[] binaries;
+    final String[] strings;
+    final boolean[] present;
+    int rowIndex;
+    StringInterner interner;
+
+    ParquetRow(MessageType schema) {
+        int n = schema.getFieldCount();
+        this.columns = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            columns.put(schema.getFieldName(i), i);
+        }
+        this.longs = new long[n];
+        this.doubles = new double[n];
+        this.binaries = new Binary[n];
+        this.strings = new String[n];
+        this.present = new boolean[n];
+    }
+
+    /**
+     * Mark all columns as null before a record is converted
+     */
+    void clear() {
+        for (int i = 0; i < present.length; i++) {
+            present[i] = false;
+            binaries[i] = null;
+            strings[i] = null;
+        }
+    }
+
+    /**
+     * @param col Name of column
+     * @return Index of the column, to be used with the integer based getters
+     */
+    public int getIndex(String col) {
+        Integer i = columns.get(col);
+        if (i == null) {
+            throw new RuntimeException("Invalid column:" + col);
+        }
+        return i;
+    }
+
+    /**
+     * @return Returns the row number for the current row
+     */
+    public int getNumber() {
+        return rowIndex;
+    }
+
+    public boolean isNull(int col) {
+        return !present[col];
+    }
+
+    public boolean isNull(String col) {
+        return isNull(getIndex(col));
+    }
+
+    public int getInt(int col, int defaultValue) {
+        return present[col] ? (int) longs[col] : defaultValue;
+    }
+
+    public int getInt(String col, int defaultValue) {
+        return getInt(getIndex(col), defaultValue);
+    }
+
+    public long getLong(int col, long defaultValue) {
+        return present[col] ? longs[col] : defaultValue;
+    }
+
+    public long getLong(String col, long defaultValue) {
+        return getLong(getIndex(col), defaultValue);
+    }
+
+    public double getDouble(int col, double defaultValue) {
+        return present[col] ? doubles[col] : defaultValue;
+    }
+
+    public double getDouble(String col, double defaultValue) {
+        return getDouble(getIndex(col), defaultValue);
+    }
+
+    public float getFloat(int col, float defaultValue) {
+        return present[col] ? (float) doubles[col] : defaultValue;
+    }
+
+    public float getFloat(String col, float defaultValue) {
+        return getFloat(getIndex(col), defaultValue);
+    }
+
+    public boolean getBoolean(int col, boolean defaultValue) {
+        return present[col] ? longs[col] != 0 : defaultValue;
+    }
+
+    public boolean getBoolean(String col, boolean defaultValue) {
+        return getBoolean(getIndex(col), defaultValue);
+    }
+
+    /**
+     * @param col Index of a BINARY column
+     * @return Value decoded as UTF-8, or taken from the interner of the file. Empty if the value is null, as on the
+     * Avro path; use isNull() to tell them apart
+     */
+    public String getString(int col) {
+        if (!present[col]) {
+            return "";
+        }
+        if (strings[col] == null) {
+            strings[col] = interner == null ? binaries[col].toStringUsingUTF8()
+                    : interner.intern(binaries[col].toByteBuffer());
+        }
+        return strings[col];
+    }
+
+    public String getString(String col) {
+        return getString(getIndex(col));
+    }
+
+    /**
+     * @param col Index of an INT32 DATE column
+     * @return Value as a LocalDate, null if the value is null
+     */
+    public LocalDate getLocalDate(int col) {
+        return present[col] ? LocalDate.ofEpochDay(longs[col]) : null;
+    }
+
+    public LocalDate getLocalDate(String col) {
+        return getLocalDate(getIndex(col));
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.increff.commons.sheet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.api.InitContext;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+import java.util.Map;
+
+/**
+ * ReadSupport which materializes records of a flat parquet schema into a reused ParquetRow, with one converter per
+ * column writing straight into the row. Dictionary encoded strings are decoded once per dictionary page, through the
+ * interner of the file when one is set
+ */
+class ParquetRowReadSupport extends ReadSupport<ParquetRow> {
+
+    private final MessageType projection;
+    private final StringInterner interner;
+
+    ParquetRowReadSupport(MessageType projection, StringInterner interner) {
+        this.projection = projection;
+        this.interner = interner;
+    }
+
+    /**
+     * @param inputFile  File to read
+     * @param projection Columns to read
+     * @param interner   Interner for the strings read, may be null
+     * @return Builder of a reader producing ParquetRows
+     */
+    static ParquetReader.Builder<ParquetRow> builder(InputFile inputFile, MessageType projection,
+                                                    StringInterner interner) {
+        return new ParquetReader.Builder<ParquetRow>(inputFile) {
+            @Override
+            protected ReadSupport<ParquetRow> getReadSupport() {
+                return new ParquetRowReadSupport(projection, interner);
+            }
+        };
+    }
+
+    @Override
+    public ReadContext init(InitContext context) {
+        return new ReadContext(projection);
+    }
+
+    @Override
+    public RecordMaterializer<ParquetRow> prepareForRead(Configuration conf, Map<String, String> keyValueMetaData,
+                                                         MessageType fileSchema, ReadContext readContext) {
+        return new RowMaterializer(readContext.getRequestedSchema(), interner);
+    }
+
+    private static class RowMaterializer extends RecordMaterializer<ParquetRow> {
+        private final ParquetRow row;
+        private final GroupConverter root;
+
+        RowMaterializer(MessageType schema, StringInterner interner) {
+            this.row = new ParquetRow(schema);
+            row.interner = interner;
+            Converter[] converters = new Converter[schema.getFieldCount()];
+            for (int i = 0; i < converters.length; i++) {
+                Type type = schema.getType(i);
+                if (!type.isPrimitive() || type.isRepetition(Type.Repetition.REPEATED)) {
+                    throw new IllegalArgumentException("Only flat schemas can be read into a ParquetRow: " + type);
+                }
+                boolean binary = type.asPrimitiveType().getPrimitiveTypeName() == PrimitiveType.PrimitiveTypeName.BINARY;
+                converters[i] = new ColumnConverter(row, i, binary);
+            }
+            this.root = new GroupConverter() {
+                @Override
+                public Converter getConverter(int fieldIndex) {
+                    return converters[fieldIndex];
+                }
+
+                @Override
+                public void start() {
+                    row.clear();
+                }
+
+                @Override
+                public void end() {
+                }
+            };
+        }
+
+        @Override
+        public ParquetRow getCurrentRecord() {
+            return row;
+        }
+
+        @Override
+        public GroupConverter getRootConverter() {
+            return root;
+        }
+    }
+
+    private static class ColumnConverter extends PrimitiveConverter {
+        private final ParquetRow row;
+        private final int col;
+        private final boolean binary;
+        private String[] dictionary;
+
+        ColumnConverter(ParquetRow row, int col, boolean binary) {
+            this.row = row;
+            this.col = col;
+            this.binary = binary;
+        }
+
+        @Override
+        public boolean hasDictionarySupport() {
+            return binary;
+        }
+
+        @Override
+        public void setDictionary(Dictionary dictionary) {
+            String[] decoded = new String[dictionary.getMaxId() + 1];
+            for (int i = 0; i < decoded.length; i++) {
+                Binary value = dictionary.decodeToBinary(i);
+                decoded[i] = row.interner == null ? value.toStringUsingUTF8()
+                        : row.interner.intern(value.toByteBuffer());
+            }
+            this.dictionary = decoded;
+        }
+
+        @Override
+        public void addValueFromDictionary(int dictionaryId) {
+            row.strings[col] = dictionary[dictionaryId];
+            row.present[col] = true;
+        }
+
+        @Override
+        public void addBinary(Binary value) {
+            row.binaries[col] = value;
+            row.present[col] = true;
+        }
+
+        @Override
+        public void addBoolean(boolean value) {
+            row.longs[col] = value ? 1 : 0;
+            row.present[col] = true;
+        }
+
+        @Override
+        public void addDouble(double value) {
+            row.doubles[col] = value;
+            row.present[col] = true;
+        }
+
+        @Override
+        public void addFloat(float value) {
+            row.doubles[col] = value;
+            row.present[col] = true;
+        }
+
+        @Override
+        public void addInt(int value) {
+            row.longs[col] = value;
+            row.present[col] = true;
+        }
+
+        @Override
+        public void addLong(long value) {
+            row.longs[col] = value;
+            row.present[col] = true;
+        }
+    }
+
+}
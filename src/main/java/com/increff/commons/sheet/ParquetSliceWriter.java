@@ -0,0 +1,168 @@
+package com.increff.commons.sheet;
+
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Writes a parquet file from slices which are encoded and compressed on a pool of threads. Each slice is written by
+ * its task as a complete in-memory parquet file; its row groups are then copied, in submission order, into the
+ * output without being decoded. Statistics, page indexes and bloom filters of the column chunks are carried over,
+ * and the footer is written with the schema and key-value metadata of the slices
+ */
+class ParquetSliceWriter implements Closeable {
+
+    private final OutputFile out;
+    private final long rowGroupSize;
+    private final int parallelism;
+    private final ExecutorService pool;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private ParquetFileWriter writer;
+    private PositionOutputStream stream;
+    private Map<String, String> keyValueMetaData;
+    private boolean submitted;
+    private boolean finished;
+
+    /**
+     * @param out          File to write to
+     * @param rowGroupSize Row group size of the slices, used for padding decisions of the output
+     * @param parallelism  Number of slices encoded at the same time
+     */
+    ParquetSliceWriter(OutputFile out, long rowGroupSize, int parallelism) {
+        this.out = out;
+        this.rowGroupSize = rowGroupSize;
+        this.parallelism = parallelism;
+        this.pool = ThreadPools.newFixedPool(parallelism, "parquet-writer");
+    }
+
+    /**
+     * Submit a slice for encoding. Once parallelism slices are in flight, waits for the oldest one and appends it to
+     * the output, so at most parallelism encoded slices are held in memory
+     *
+     * @param slice Task writing a slice as a parquet file and returning its bytes
+     */
+    void submit(Callable<byte[]> slice) throws IOException {
+        if (pending.size() >= parallelism) {
+            append(await(pending.poll()));
+        }
+        pending.add(pool.submit(slice));
+        submitted = true;
+    }
+
+    /**
+     * @return true if a slice was submitted
+     */
+    boolean isSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * Append the remaining slices and write the footer. At least one slice must have been submitted, as the schema
+     * and metadata of the output are taken from the slices
+     */
+    void finish() throws IOException {
+        while (!pending.isEmpty()) {
+            append(await(pending.poll()));
+        }
+        writer.end(keyValueMetaData);
+        finished = true;
+    }
+
+    /**
+     * Stop the pool. When the file was not finished, slices still in flight are abandoned and the output is closed,
+     * as only a successful finish() closes it through the footer
+     */
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            pool.shutdown();
+            return;
+        }
+        pool.shutdownNow();
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void append(byte[] slice) throws IOException {
+        ParquetStreamReader input = new ParquetStreamReader(slice);
+        try (ParquetFileReader reader = ParquetFileReader.open(input);
+             SeekableInputStream in = input.newStream()) {
+            FileMetaData metaData = reader.getFooter().getFileMetaData();
+            MessageType schema = metaData.getSchema();
+            if (writer == null) {
+                // Truncate lengths and checksums are the defaults with which the slices are written
+                writer = new ParquetFileWriter(trackedOutput(), schema, ParquetFileWriter.Mode.OVERWRITE, rowGroupSize, 0,
+                        ParquetProperties.DEFAULT_COLUMN_INDEX_TRUNCATE_LENGTH,
+                        ParquetProperties.DEFAULT_STATISTICS_TRUNCATE_LENGTH,
+                        ParquetProperties.DEFAULT_PAGE_WRITE_CHECKSUM_ENABLED);
+                writer.start();
+                keyValueMetaData = metaData.getKeyValueMetaData();
+            }
+            for (BlockMetaData block : reader.getRowGroups()) {
+                writer.startBlock(block.getRowCount());
+                for (ColumnChunkMetaData chunk : block.getColumns()) {
+                    writer.appendColumnChunk(schema.getColumnDescription(chunk.getPath().toArray()), in, chunk,
+                            reader.readBloomFilter(chunk), reader.readColumnIndex(chunk),
+                            reader.readOffsetIndex(chunk));
+                }
+                writer.endBlock();
+            }
+        }
+    }
+
+    /**
+     * @return Output which keeps the stream opened on it, so that close() can release it when the file is not finished
+     */
+    private OutputFile trackedOutput() {
+        return new OutputFile() {
+
+            @Override
+            public PositionOutputStream create(long blockSizeHint) throws IOException {
+                return stream = out.create(blockSizeHint);
+            }
+
+            @Override
+            public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+                return stream = out.createOrOverwrite(blockSizeHint);
+            }
+
+            @Override
+            public boolean supportsBlockSize() {
+                return out.supportsBlockSize();
+            }
+
+            @Override
+            public long defaultBlockSize() {
+                return out.defaultBlockSize();
+            }
+        };
+    }
+
+    private static byte[] await(Future<byte[]> slice) throws IOException {
+        try {
+            return ThreadPools.await(slice);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+}
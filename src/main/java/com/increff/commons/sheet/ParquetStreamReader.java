@@ -30,6 +30,10 @@ public class ParquetStreamReader implements InputFile {
         this.data = IOUtils.toByteArray(stream);
     }
 
+    ParquetStreamReader(byte[] data) {
+        this.data = data;
+    }
+
     @Override
     public long getLength()  {
         return this.data.length;
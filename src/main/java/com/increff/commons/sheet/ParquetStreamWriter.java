@@ -23,7 +23,7 @@ class ParquetStreamWriter implements OutputFile {
     private PositionOutputStream createPositionOutputstream() {
         return new PositionOutputStream() {
 
-            int pos = 0;
+            long pos = 0;
 
             @Override
             public long getPos() throws IOException {
@@ -59,6 +59,7 @@ class ParquetStreamWriter implements OutputFile {
         return createPositionOutputstream();
     }
 
+    // A stream has no file system blocks, so row groups are never padded to align with them
     @Override
     public boolean supportsBlockSize() {
         return false;
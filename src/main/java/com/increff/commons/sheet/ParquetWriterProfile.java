@@ -0,0 +1,188 @@
+package com.increff.commons.sheet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Settings used when writing parquet files: compression codec, row group and page sizes, dictionary encoding, bloom
+ * filters and writer version. Use one of the presets or tune the settings individually. A profile holds the Hadoop
+ * Configuration used by its writers, so it is created once instead of on every write
+ */
+public class ParquetWriterProfile {
+
+    private static final String ZSTD_LEVEL = "parquet.compression.codec.zstd.level";
+
+    private CompressionCodecName codec = CompressionCodecName.SNAPPY;
+    private Integer zstdLevel;
+    private long rowGroupSize = ParquetWriter.DEFAULT_BLOCK_SIZE;
+    private int pageSize = ParquetWriter.DEFAULT_PAGE_SIZE;
+    private int dictionaryPageSize = ParquetWriter.DEFAULT_PAGE_SIZE;
+    private boolean dictionary = true;
+    private Map<String, Boolean> columnDictionary = new HashMap<>();
+    private Set<String> bloomFilterColumns = new HashSet<>();
+    private Map<String, Long> bloomFilterNdv = new HashMap<>();
+    private ParquetProperties.WriterVersion writerVersion = ParquetProperties.WriterVersion.PARQUET_1_0;
+    private Configuration conf;
+
+    /**
+     * @return SNAPPY compression with parquet's default sizes. This is what files were always written with
+     */
+    public static ParquetWriterProfile defaults() {
+        return new ParquetWriterProfile();
+    }
+
+    /**
+     * @return Profile favouring write speed: LZ4_RAW compression, no dictionary encoding and large pages
+     */
+    public static ParquetWriterProfile fastWrite() {
+        ParquetWriterProfile profile = new ParquetWriterProfile();
+        profile.setCodec(CompressionCodecName.LZ4_RAW);
+        profile.setDictionary(false);
+        profile.setPageSize(4 * 1024 * 1024);
+        return profile;
+    }
+
+    /**
+     * @return Profile favouring small files which are fast to scan: ZSTD compression, dictionary encoding, smaller
+     * row groups and pages so that statistics can skip more data, and the v2 page format
+     */
+    public static ParquetWriterProfile smallFastScan() {
+        ParquetWriterProfile profile = new ParquetWriterProfile();
+        profile.setCodec(CompressionCodecName.ZSTD);
+        profile.setZstdLevel(6);
+        profile.setRowGroupSize(64L * 1024 * 1024);
+        profile.setPageSize(512 * 1024);
+        profile.setDictionaryPageSize(2 * 1024 * 1024);
+        profile.setWriterVersion(ParquetProperties.WriterVersion.PARQUET_2_0);
+        return profile;
+    }
+
+    public CompressionCodecName getCodec() {
+        return codec;
+    }
+
+    /**
+     * @param codec Compression codec, such as ZSTD, LZ4_RAW, GZIP, SNAPPY or UNCOMPRESSED
+     */
+    public void setCodec(CompressionCodecName codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * @param zstdLevel Compression level used with ZSTD, 1 (fastest) to 22 (smallest)
+     */
+    public void setZstdLevel(Integer zstdLevel) {
+        this.zstdLevel = zstdLevel;
+        this.conf = null;
+    }
+
+    public long getRowGroupSize() {
+        return rowGroupSize;
+    }
+
+    /**
+     * Row groups are flushed when they reach this size, but are not padded or aligned to it: files are written to a
+     * plain output stream, which has no file system blocks to align with, and padding would only add unused bytes
+     *
+     * @param rowGroupSize Target size of a row group in bytes
+     */
+    public void setRowGroupSize(long rowGroupSize) {
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    /**
+     * @param pageSize Target size of a data page in bytes
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @param dictionaryPageSize Maximum size of a dictionary page in bytes, beyond which a column falls back to plain
+     *                           encoding
+     */
+    public void setDictionaryPageSize(int dictionaryPageSize) {
+        this.dictionaryPageSize = dictionaryPageSize;
+    }
+
+    /**
+     * @param dictionary true to dictionary encode columns unless overridden per column
+     */
+    public void setDictionary(boolean dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @param column     Name of column
+     * @param dictionary true to dictionary encode the column
+     */
+    public void setDictionary(String column, boolean dictionary) {
+        columnDictionary.put(column, dictionary);
+    }
+
+    /**
+     * Write a bloom filter for a column, which lets readers skip row groups on equality filters
+     *
+     * @param column Name of column
+     * @param ndv    Expected number of distinct values, null to let parquet size the filter
+     */
+    public void setBloomFilter(String column, Long ndv) {
+        bloomFilterColumns.add(column);
+        if (ndv != null) {
+            bloomFilterNdv.put(column, ndv);
+        }
+    }
+
+    /**
+     * @param writerVersion PARQUET_1_0, or PARQUET_2_0 for v2 data pages and encodings
+     */
+    public void setWriterVersion(ParquetProperties.WriterVersion writerVersion) {
+        this.writerVersion = writerVersion;
+    }
+
+    /**
+     * Apply this profile to a writer builder
+     *
+     * @param builder Builder of a parquet writer
+     * @return The same builder
+     */
+    public <B extends ParquetWriter.Builder<?, B>> B apply(B builder) {
+        builder.withConf(getConf())
+                .withCompressionCodec(codec)
+                .withRowGroupSize(rowGroupSize)
+                .withPageSize(pageSize)
+                .withDictionaryPageSize(dictionaryPageSize)
+                .withDictionaryEncoding(dictionary)
+                .withWriterVersion(writerVersion);
+        for (Map.Entry<String, Boolean> e : columnDictionary.entrySet()) {
+            builder.withDictionaryEncoding(e.getKey(), e.getValue());
+        }
+        for (String column : bloomFilterColumns) {
+            builder.withBloomFilterEnabled(column, true);
+            Long ndv = bloomFilterNdv.get(column);
+            if (ndv != null) {
+                builder.withBloomFilterNDV(column, ndv);
+            }
+        }
+        return builder;
+    }
+
+    private synchronized Configuration getConf() {
+        if (conf == null) {
+            Configuration c = new Configuration();
+            if (zstdLevel != null) {
+                c.setInt(ZSTD_LEVEL, zstdLevel);
+            }
+            conf = c;
+        }
+        return conf;
+    }
+
+}
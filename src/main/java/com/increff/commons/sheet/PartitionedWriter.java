@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Writer splitting rows into part files within a directory, named part-00000, part-00001, ... with the extension of
+ * the IDataFile. Rows either roll over to a new part once the current one reaches a row or byte target, or are
+ * assigned to a part by a partitioner on a key column.
+ * Every part is encoded by its own IDataFile. Rows are handed to the parts in batches, which are written on a pool
+ * of threads, so different parts are encoded and written in parallel while each part keeps the order of its rows.
+ * Once closed, a manifest listing the parts with their row counts and sizes is written as _manifest.tsv.
+ * Compressed delimited parts also start compression threads of their own, so parallelism times the compression
+ * threads of the IDataFile may be compressing at once
+ */
+public class PartitionedWriter<T> extends RowWriter<T> {
+
+    public static final String MANIFEST_FILE = "_manifest.tsv";
+    private static final int BATCH_ROWS = 4096;
+    private static final Pattern PART_INDEX = Pattern.compile("part-\\d{5,}");
+
+    private final File dir;
+    private final Supplier<? extends IDataFile<T>> factory;
+    private final int parallelism;
+    private long rowsPerPart = 1_000_000;
+    private long bytesPerPart = Long.MAX_VALUE;
+    private ToIntFunction<? super T> partitioner;
+    private boolean manifest = true;
+
+    private ExecutorService pool;
+    private Semaphore permits;
+    private final Map<Integer, Part> parts = new TreeMap<>();
+    private Part current;
+    private volatile Throwable failure;
+
+    PartitionedWriter(File dir, Supplier<? extends IDataFile<T>> factory, int parallelism) {
+        super(null);
+        this.dir = dir;
+        this.factory = factory;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @param rowsPerPart Number of rows after which a new part is started. Defaults to 1,000,000
+     */
+    public void setRowsPerPart(long rowsPerPart) {
+        checkNotStarted();
+        this.rowsPerPart = rowsPerPart;
+    }
+
+    /**
+     * Start a new part once the current one has reached a size. The size is checked against the bytes already
+     * flushed to the part, so parts overshoot the target by up to the buffered output of their encoder, which for
+     * parquet is a row group
+     *
+     * @param bytesPerPart Size in bytes after which a new part is started. No limit by default
+     */
+    public void setBytesPerPart(long bytesPerPart) {
+        checkNotStarted();
+        this.bytesPerPart = bytesPerPart;
+    }
+
+    /**
+     * Assign each row to a part by a function instead of rolling over by size. The row and byte targets are ignored,
+     * and only the parts which receive rows are created
+     *
+     * @param partitioner Returns the index of the part of a row, which must not be negative
+     */
+    public void setPartitioner(ToIntFunction<? super T> partitioner) {
+        checkNotStarted();
+        this.partitioner = partitioner;
+    }
+
+    /**
+     * Assign rows to parts by the hash of a key, so all rows with the same key go to the same part
+     *
+     * @param parts Number of parts
+     * @param key   Key of a row
+     */
+    public void setHashPartitioning(int parts, Function<? super T, ?> key) {
+        setPartitioner(t -> Math.floorMod(Objects.hashCode(key.apply(t)), parts));
+    }
+
+    /**
+     * Assign rows to parts by ranges of a key. Part 0 holds keys below the first bound, and part i holds keys from
+     * bound i - 1, inclusive, up to bound i
+     *
+     * @param key    Key of a row, which must not be null
+     * @param bounds Bounds between the parts, in ascending order
+     */
+    public <K extends Comparable<? super K>> void setRangePartitioning(Function<? super T, K> key, List<K> bounds) {
+        List<K> ranges = new ArrayList<>(bounds);
+        setPartitioner(t -> {
+            int i = Collections.binarySearch(ranges, key.apply(t));
+            return i >= 0 ? i + 1 : -i - 1;
+        });
+    }
+
+    /**
+     * @param manifest Whether to write _manifest.tsv once all parts are closed. Defaults to true
+     */
+    public void setManifest(boolean manifest) {
+        this.manifest = manifest;
+    }
+
+    /**
+     * @return Parts written, in the order of their index. Complete once the writer is closed
+     */
+    public List<DatasetPart> getParts() {
+        List<DatasetPart> list = new ArrayList<>();
+        for (Part part : parts.values()) {
+            list.add(new DatasetPart(part.name, part.rows, part.out == null ? 0 : part.out.count));
+        }
+        return list;
+    }
+
+    /**
+     * @param name      Name of a file
+     * @param extension Extension of the IDataFile of the parts
+     * @return true if the file is named as a part with the extension
+     */
+    static boolean isPartFile(String name, String extension) {
+        return name.endsWith(extension)
+                && PART_INDEX.matcher(name.substring(0, name.length() - extension.length())).matches();
+    }
+
+    @Override
+    protected void writeRow(T t) throws IOException {
+        checkFailure();
+        if (pool == null) {
+            pool = ThreadPools.newFixedPool(parallelism, "partition-writer");
+            permits = new Semaphore(parallelism * 2);
+        }
+
+        Part part;
+        if (partitioner != null) {
+            int index = partitioner.applyAsInt(t);
+            if (index < 0) {
+                throw new IllegalArgumentException("Invalid part: " + index);
+            }
+            part = parts.get(index);
+            if (part == null) {
+                part = new Part(index);
+                parts.put(index, part);
+            }
+        } else {
+            if (current == null) {
+                current = new Part(parts.size());
+                parts.put(current.index, current);
+            }
+            part = current;
+        }
+
+        part.batch.add(t);
+        part.rows++;
+        if (part.batch.size() >= BATCH_ROWS) {
+            submit(part);
+        }
+        if (part == current && (part.rows >= rowsPerPart || part.out != null && part.out.count >= bytesPerPart)) {
+            submit(part);
+            close(part);
+            current = null;
+        }
+    }
+
+    @Override
+    protected void closeOutput() throws IOException {
+        if (pool == null) {
+            writeManifest();
+            return;
+        }
+        try {
+            for (Part part : parts.values()) {
+                submit(part);
+                close(part);
+            }
+            for (Part part : parts.values()) {
+                try {
+                    part.lane.join();
+                } catch (CompletionException e) {
+                    // Reported by checkFailure()
+                }
+            }
+            if (failure != null) {
+                for (Part part : parts.values()) {
+                    release(part);
+                }
+            }
+            checkFailure();
+        } finally {
+            pool.shutdownNow();
+        }
+        writeManifest();
+    }
+
+    /**
+     * Hand the rows collected for a part to the pool, behind the batches already queued for the part
+     */
+    private void submit(Part part) throws IOException {
+        if (part.batch.isEmpty()) {
+            return;
+        }
+        List<T> batch = part.batch;
+        part.batch = new ArrayList<>();
+        enqueue(part, () -> {
+            if (part.writer == null) {
+                part.open();
+            }
+            part.writer.appendAll(batch);
+        });
+    }
+
+    /**
+     * Close a part once the batches queued for it have been written
+     */
+    private void close(Part part) throws IOException {
+        if (part.closed) {
+            return;
+        }
+        part.closed = true;
+        enqueue(part, () -> {
+            if (part.writer == null) {
+                part.open();
+            }
+            part.writer.close();
+        });
+    }
+
+    /**
+     * Close the writer and file of a part after a failure. Tasks queued behind a failed task are skipped, so the
+     * part may not have been closed by its lane
+     */
+    private void release(Part part) {
+        try {
+            if (part.writer != null) {
+                part.writer.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            // The first failure is reported
+        }
+        try {
+            if (part.out != null) {
+                part.out.close();
+            }
+        } catch (IOException e) {
+            // The first failure is reported
+        }
+    }
+
+    private void enqueue(Part part, IOTask task) throws IOException {
+        // Bound the batches in flight, so a slow disk does not buffer the whole input
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        part.lane = part.lane.thenRunAsync(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, pool).whenComplete((v, e) -> {
+            permits.release();
+            if (e != null && failure == null) {
+                failure = e;
+            }
+        });
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t == null) {
+            return;
+        }
+        while ((t instanceof CompletionException || t instanceof UncheckedIOException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new IOException(t);
+    }
+
+    private void writeManifest() throws IOException {
+        if (!manifest) {
+            return;
+        }
+        try (LineWriter writer = new LineWriter(new FileOutputStream(new File(dir, MANIFEST_FILE)), 8192)) {
+            writer.write("file\trows\tbytes");
+            for (DatasetPart part : getParts()) {
+                writer.write("\n");
+                writer.write(part.getFile());
+                writer.write("\t");
+                writer.writeLong(part.getRows());
+                writer.write("\t");
+                writer.writeLong(part.getBytes());
+            }
+        }
+    }
+
+    private void checkNotStarted() {
+        if (pool != null) {
+            throw new IllegalStateException("Writer has started");
+        }
+    }
+
+    private interface IOTask {
+        void run() throws IOException;
+    }
+
+    private final class Part {
+        private final int index;
+        private final IDataFile<T> sheet;
+        private final String name;
+        private List<T> batch = new ArrayList<>();
+        private long rows;
+        private boolean closed;
+        private CompletableFuture<Void> lane = CompletableFuture.completedFuture(null);
+        private volatile CountingOutputStream out;
+        private RowWriter<T> writer;
+
+        Part(int index) {
+            this.index = index;
+            this.sheet = factory.get();
+            this.name = String.format("part-%05d%s", index, sheet.getFileExtension());
+        }
+
+        void open() throws IOException {
+            out = new CountingOutputStream(new FileOutputStream(new File(dir, name)));
+            writer = sheet.openWriter(out);
+        }
+    }
+
+    /**
+     * Counts the bytes written through to a file, so the size of a part can be checked while it is written
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private volatile long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+}
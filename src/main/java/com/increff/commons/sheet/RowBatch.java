@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of mapping a consecutive run of records on a worker thread. Records are numbered from 1 within the batch;
+ * RowErrors carry these local numbers until the batch is delivered by a BatchCursor
+ */
+class RowBatch<T> {
+
+    private final List<T> rows;
+    private final List<RowError> errors;
+    private int size;
+
+    public RowBatch(int capacity) {
+        this.rows = new ArrayList<>(capacity);
+        this.errors = new ArrayList<>();
+    }
+
+    /**
+     * Record a successfully mapped row
+     */
+    public void add(T t) {
+        size++;
+        rows.add(t);
+    }
+
+    /**
+     * Record a row which failed to map
+     */
+    public void addError(String error) {
+        size++;
+        errors.add(new RowError(size, error));
+    }
+
+    /**
+     * @return Number of records in the batch, including failed ones
+     */
+    public int size() {
+        return size;
+    }
+
+    public List<T> getRows() {
+        return rows;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+}
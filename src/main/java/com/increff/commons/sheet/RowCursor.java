@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Forward-only iterator over the rows of a file which is being read. Rows are mapped lazily, one at a time, as the
+ * cursor advances, so only the current row is held in memory. Rows which fail to map are collected as RowErrors by
+ * the file and are skipped by the cursor.
+ * Failures which abort the whole read (such as exceeding maxRows) are thrown as-is from drain() and wrapped in a
+ * RuntimeException from hasNext() / next()
+ */
+public abstract class RowCursor<T> implements Iterator<T>, Closeable {
+
+    private T current;
+    private boolean ready;
+    private boolean finished;
+
+    /**
+     * Read input until the next row is mapped and store it using setCurrent()
+     *
+     * @return true if a row was read, false at end of input
+     */
+    protected abstract boolean fetch() throws Exception;
+
+    protected void setCurrent(T t) {
+        this.current = t;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (ready || finished) {
+            return ready;
+        }
+        try {
+            ready = fetch();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        finished = !ready;
+        return ready;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ready = false;
+        T t = current;
+        current = null;
+        return t;
+    }
+
+    /**
+     * Hand every remaining row to the consumer. Unlike hasNext(), exceptions are propagated without wrapping
+     *
+     * @param consumer Consumer which receives the rows
+     */
+    public void drain(IRowConsumer<? super T> consumer) throws Exception {
+        if (ready) {
+            consumer.accept(next());
+        }
+        while (!finished && fetch()) {
+            T t = current;
+            current = null;
+            consumer.accept(t);
+        }
+        finished = true;
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writer appending rows to a file one at a time, so rows can be streamed from their source without first being
+ * collected with setData(). The header is written when the writer is opened, and the output is flushed and closed
+ * by close()
+ */
+public abstract class RowWriter<T> implements Closeable {
+
+    private final IProgressMonitor progress;
+    private int count;
+    private boolean closed;
+
+    protected RowWriter(IProgressMonitor progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Map a row with the write hook of the file and write it to the output
+     *
+     * @param t Row to write
+     */
+    protected abstract void writeRow(T t) throws IOException;
+
+    /**
+     * Flush and close the output
+     */
+    protected abstract void closeOutput() throws IOException;
+
+    /**
+     * @param t Row to append
+     */
+    public void append(T t) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+        count++;
+        writeRow(t);
+        if (progress != null) {
+            progress.process(count);
+        }
+    }
+
+    /**
+     * @param rows Rows to append, in order
+     */
+    public void appendAll(Iterable<? extends T> rows) throws IOException {
+        for (T t : rows) {
+            append(t);
+        }
+    }
+
+    /**
+     * @return Number of rows appended so far
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            closeOutput();
+        }
+    }
+
+}
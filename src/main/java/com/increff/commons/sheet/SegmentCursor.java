@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Cursor over independently parsed segments of an input. Segments are submitted to the pool a window at a time and
+ * delivered in order, with row numbers rebased to the position of each segment in the input. A segment is submitted
+ * as each batch is delivered, so at most window parsed batches are held while the consumer catches up
+ */
+class SegmentCursor<T> extends BatchCursor<T> {
+
+    private final ExecutorService pool;
+    private final Closeable input;
+    private final Iterator<Callable<RowBatch<T>>> segments;
+    private final ArrayDeque<Future<RowBatch<T>>> pending = new ArrayDeque<>();
+
+    /**
+     * @param window Number of segments parsed ahead of the consumer, usually twice the parallelism of the pool
+     */
+    public SegmentCursor(ExecutorService pool, List<Callable<RowBatch<T>>> segments, int window, Closeable input,
+                         Integer maxRows, IProgressMonitor progress, List<RowError> errors) {
+        super(maxRows, progress, errors);
+        this.pool = pool;
+        this.input = input;
+        this.segments = segments.iterator();
+        for (int i = 0; i < window && this.segments.hasNext(); i++) {
+            pending.add(pool.submit(this.segments.next()));
+        }
+    }
+
+    @Override
+    protected RowBatch<T> nextBatch() throws Exception {
+        Future<RowBatch<T>> future = pending.poll();
+        if (future == null) {
+            return null;
+        }
+        RowBatch<T> batch = ThreadPools.await(future);
+        if (segments.hasNext()) {
+            pending.add(pool.submit(segments.next()));
+        }
+        return batch;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        input.close();
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded table of strings, used instead of String.intern() to share the values of low cardinality columns. Unlike
+ * the JVM string table it is not contended, and its strings are released together with the interner. When all slots
+ * for a hash are taken, the string added first is dropped, so the table never grows beyond its capacity.
+ * <p>
+ * Values can be interned straight from a char or UTF-8 byte range, allocating a String only on a miss. An interner
+ * may be shared by several threads and files; concurrent updates may lose an entry, which only costs a later miss
+ */
+public class StringInterner {
+
+    private static final int DEFAULT_CAPACITY = 1 << 14;
+    private static final int PROBES = 4;
+
+    private final String[] table;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public StringInterner() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Maximum number of strings held, rounded up to a power of two
+     */
+    public StringInterner(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity:" + capacity);
+        }
+        int size = Math.max(PROBES, Integer.highestOneBit(capacity - 1) << 1);
+        this.table = new String[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @param s String to intern
+     * @return Equal string held by the interner, s itself if there was none. null if s is null
+     */
+    public String intern(String s) {
+        if (s == null) {
+            return null;
+        }
+        int hash = s.hashCode();
+        int slot = spread(hash);
+        for (int i = 0; i < PROBES; i++) {
+            String e = table[(slot + i) & mask];
+            if (e == null) {
+                break;
+            }
+            if (e.hashCode() == hash && e.equals(s)) {
+                hits.increment();
+                return e;
+            }
+        }
+        return store(slot, s);
+    }
+
+    /**
+     * @param buf   Buffer holding the characters
+     * @param start Index of the first character
+     * @param end   Index just past the last character
+     * @return String of the characters in [start, end) of buf
+     */
+    public String intern(char[] buf, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buf[i];
+        }
+        int slot = spread(hash);
+        for (int i = 0; i < PROBES; i++) {
+            String e = table[(slot + i) & mask];
+            if (e == null) {
+                break;
+            }
+            if (e.hashCode() == hash && matches(e, buf, start, end)) {
+                hits.increment();
+                return e;
+            }
+        }
+        return store(slot, new String(buf, start, end - start));
+    }
+
+    /**
+     * Intern a UTF-8 encoded value. ASCII values are looked up without decoding, others are decoded first
+     *
+     * @param utf8   Buffer holding the encoded value
+     * @param offset Index of the first byte
+     * @param length Number of bytes
+     * @return Decoded string
+     */
+    public String intern(byte[] utf8, int offset, int length) {
+        int end = offset + length;
+        int hash = 0;
+        for (int i = offset; i < end; i++) {
+            byte b = utf8[i];
+            if (b < 0) {
+                return intern(new String(utf8, offset, length, StandardCharsets.UTF_8));
+            }
+            hash = 31 * hash + b;
+        }
+        int slot = spread(hash);
+        for (int i = 0; i < PROBES; i++) {
+            String e = table[(slot + i) & mask];
+            if (e == null) {
+                break;
+            }
+            if (e.hashCode() == hash && matches(e, utf8, offset, end)) {
+                hits.increment();
+                return e;
+            }
+        }
+        return store(slot, new String(utf8, offset, length, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Intern the remaining bytes of a UTF-8 encoded buffer, without changing its position
+     *
+     * @param utf8 Buffer holding the encoded value
+     * @return Decoded string
+     */
+    public String intern(ByteBuffer utf8) {
+        if (utf8.hasArray()) {
+            return intern(utf8.array(), utf8.arrayOffset() + utf8.position(), utf8.remaining());
+        }
+        return intern(StandardCharsets.UTF_8.decode(utf8.duplicate()).toString());
+    }
+
+    /**
+     * @return Number of lookups which found an equal string
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Number of lookups which had to add a string
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Maximum number of strings held
+     */
+    public int getCapacity() {
+        return table.length;
+    }
+
+    /**
+     * @return Number of strings held
+     */
+    public int size() {
+        int n = 0;
+        for (String e : table) {
+            if (e != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Release all strings and reset the statistics
+     */
+    public void clear() {
+        Arrays.fill(table, null);
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * Add a string to the first free slot for its hash, or to its home slot if none is free
+     */
+    private String store(int slot, String s) {
+        misses.increment();
+        for (int i = 0; i < PROBES; i++) {
+            int j = (slot + i) & mask;
+            if (table[j] == null) {
+                table[j] = s;
+                return s;
+            }
+        }
+        // Shift the oldest string out, so recently added strings stay in the table
+        for (int i = PROBES - 1; i > 0; i--) {
+            table[(slot + i) & mask] = table[(slot + i - 1) & mask];
+        }
+        table[slot & mask] = s;
+        return s;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String s, char[] buf, int start, int end) {
+        if (s.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i - start) != buf[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String s, byte[] buf, int start, int end) {
+        if (s.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i - start) != buf[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
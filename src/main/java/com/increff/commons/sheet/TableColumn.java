@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Column of a ColumnTable. Values are held in a primitive array of the column type, with a bitmap of null values;
+ * strings are dictionary encoded, holding each distinct value once
+ */
+public class TableColumn {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String name;
+    private final ColumnType type;
+    private int size;
+    private long[] nulls;
+    private int[] ints;
+    private long[] longs;
+    private double[] doubles;
+    private HashMap<String, Integer> codes;
+    private List<String> dictionary;
+
+    TableColumn(String name, ColumnType type) {
+        this.name = name;
+        this.type = type;
+        this.nulls = new long[words(INITIAL_CAPACITY)];
+        switch (type) {
+            case LONG:
+                longs = new long[INITIAL_CAPACITY];
+                break;
+            case DOUBLE:
+                doubles = new double[INITIAL_CAPACITY];
+                break;
+            case BOOLEAN:
+                longs = new long[words(INITIAL_CAPACITY)];
+                break;
+            case STRING:
+                codes = new HashMap<>();
+                dictionary = new ArrayList<>();
+                ints = new int[INITIAL_CAPACITY];
+                break;
+            default:
+                ints = new int[INITIAL_CAPACITY];
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ColumnType getType() {
+        return type;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int row) {
+        checkRow(row);
+        return (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * @param row          Index of row
+     * @param defaultValue Value returned for null
+     * @return Value of an INT, DATE (as epoch day) or BOOLEAN (as 0 or 1) column
+     */
+    public int getInt(int row, int defaultValue) {
+        if (isNull(row)) {
+            return defaultValue;
+        }
+        switch (type) {
+            case INT:
+            case DATE:
+                return ints[row];
+            case BOOLEAN:
+                return bit(row) ? 1 : 0;
+            default:
+                throw new IllegalStateException("Column " + name + " of type " + type + " cannot be read as int");
+        }
+    }
+
+    /**
+     * @param row          Index of row
+     * @param defaultValue Value returned for null
+     * @return Value of a LONG, INT or DATE column
+     */
+    public long getLong(int row, long defaultValue) {
+        if (isNull(row)) {
+            return defaultValue;
+        }
+        return type == ColumnType.LONG ? longs[row] : getInt(row, 0);
+    }
+
+    /**
+     * @param row          Index of row
+     * @param defaultValue Value returned for null
+     * @return Value of a DOUBLE, LONG or INT column
+     */
+    public double getDouble(int row, double defaultValue) {
+        if (isNull(row)) {
+            return defaultValue;
+        }
+        return type == ColumnType.DOUBLE ? doubles[row] : getLong(row, 0);
+    }
+
+    public boolean getBoolean(int row, boolean defaultValue) {
+        if (type != ColumnType.BOOLEAN) {
+            throw new IllegalStateException("Column " + name + " of type " + type + " cannot be read as boolean");
+        }
+        return isNull(row) ? defaultValue : bit(row);
+    }
+
+    public LocalDate getLocalDate(int row) {
+        if (type != ColumnType.DATE) {
+            throw new IllegalStateException("Column " + name + " of type " + type + " cannot be read as date");
+        }
+        return isNull(row) ? null : LocalDate.ofEpochDay(ints[row]);
+    }
+
+    /**
+     * @param row Index of row
+     * @return Value of a STRING column, or any other column converted to a string. Null if the value is null
+     */
+    public String getString(int row) {
+        if (type == ColumnType.STRING) {
+            return isNull(row) ? null : dictionary.get(ints[row]);
+        }
+        Object value = getValue(row);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * @param row Index of row
+     * @return Code of the value of a STRING column in getDictionary(), -1 if the value is null
+     */
+    public int getCode(int row) {
+        if (type != ColumnType.STRING) {
+            throw new IllegalStateException("Column " + name + " of type " + type + " is not dictionary encoded");
+        }
+        return isNull(row) ? -1 : ints[row];
+    }
+
+    /**
+     * @return Distinct values of a STRING column, indexed by code
+     */
+    public List<String> getDictionary() {
+        if (type != ColumnType.STRING) {
+            throw new IllegalStateException("Column " + name + " of type " + type + " is not dictionary encoded");
+        }
+        return Collections.unmodifiableList(dictionary);
+    }
+
+    /**
+     * @param row Index of row
+     * @return Value boxed as Integer, Long, Double, Boolean, LocalDate or String, null if the value is null
+     */
+    public Object getValue(int row) {
+        if (isNull(row)) {
+            return null;
+        }
+        switch (type) {
+            case INT:
+                return ints[row];
+            case LONG:
+                return longs[row];
+            case DOUBLE:
+                return doubles[row];
+            case BOOLEAN:
+                return bit(row);
+            case DATE:
+                return LocalDate.ofEpochDay(ints[row]);
+            default:
+                return dictionary.get(ints[row]);
+        }
+    }
+
+    /* APPENDS, used by the readers */
+
+    void appendNull() {
+        grow();
+        nulls[size >>> 6] |= 1L << size;
+        size++;
+    }
+
+    void appendInt(int value) {
+        grow();
+        ints[size++] = value;
+    }
+
+    void appendLong(long value) {
+        grow();
+        longs[size++] = value;
+    }
+
+    void appendDouble(double value) {
+        grow();
+        doubles[size++] = value;
+    }
+
+    void appendBoolean(boolean value) {
+        grow();
+        if (value) {
+            longs[size >>> 6] |= 1L << size;
+        }
+        size++;
+    }
+
+    void appendDate(LocalDate value) {
+        if (value == null) {
+            appendNull();
+        } else {
+            appendInt((int) value.toEpochDay());
+        }
+    }
+
+    void appendString(String value) {
+        if (value == null) {
+            appendNull();
+            return;
+        }
+        appendInt(code(value));
+    }
+
+    /**
+     * Append all values of a column of the same type. Strings are re-encoded against the dictionary of this column
+     * by mapping each code of the other column once, instead of looking up every value
+     *
+     * @param other Column to append
+     */
+    void appendAll(TableColumn other) {
+        ensureCapacity(size + other.size);
+        int[] remap = null;
+        if (type == ColumnType.STRING) {
+            remap = new int[other.dictionary.size()];
+            Arrays.fill(remap, -1);
+        }
+        for (int row = 0; row < other.size; row++) {
+            if (other.isNull(row)) {
+                appendNull();
+                continue;
+            }
+            switch (type) {
+                case LONG:
+                    appendLong(other.longs[row]);
+                    break;
+                case DOUBLE:
+                    appendDouble(other.doubles[row]);
+                    break;
+                case BOOLEAN:
+                    appendBoolean(other.bit(row));
+                    break;
+                case STRING:
+                    int code = other.ints[row];
+                    if (remap[code] < 0) {
+                        remap[code] = code(other.dictionary.get(code));
+                    }
+                    appendInt(remap[code]);
+                    break;
+                default:
+                    appendInt(other.ints[row]);
+            }
+        }
+    }
+
+    /**
+     * Allocate room for a number of rows up front, when the row count is known before loading
+     *
+     * @param rows Number of rows the column will hold
+     */
+    void ensureCapacity(int rows) {
+        if (words(rows) > nulls.length) {
+            nulls = Arrays.copyOf(nulls, words(rows));
+            if (type == ColumnType.BOOLEAN) {
+                longs = Arrays.copyOf(longs, nulls.length);
+            }
+        }
+        if (ints != null && rows > ints.length) {
+            ints = Arrays.copyOf(ints, rows);
+        } else if (doubles != null && rows > doubles.length) {
+            doubles = Arrays.copyOf(doubles, rows);
+        } else if (type == ColumnType.LONG && rows > longs.length) {
+            longs = Arrays.copyOf(longs, rows);
+        }
+    }
+
+    /**
+     * Drop values past a row count, to undo a row which failed part way
+     *
+     * @param rows Number of rows to keep
+     */
+    void truncate(int rows) {
+        while (size > rows) {
+            size--;
+            nulls[size >>> 6] &= ~(1L << size);
+            if (type == ColumnType.BOOLEAN) {
+                longs[size >>> 6] &= ~(1L << size);
+            }
+        }
+    }
+
+    /**
+     * Release spare capacity once all rows are loaded. The dictionary index is only needed while loading
+     */
+    void trim() {
+        nulls = Arrays.copyOf(nulls, words(size));
+        if (ints != null) {
+            ints = Arrays.copyOf(ints, size);
+        } else if (doubles != null) {
+            doubles = Arrays.copyOf(doubles, size);
+        } else {
+            longs = Arrays.copyOf(longs, type == ColumnType.BOOLEAN ? words(size) : size);
+        }
+        codes = null;
+    }
+
+    private int code(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            codes.put(value, code);
+            dictionary.add(value);
+        }
+        return code;
+    }
+
+    private boolean bit(int row) {
+        return (longs[row >>> 6] & (1L << row)) != 0;
+    }
+
+    private void grow() {
+        if (words(size + 1) > nulls.length) {
+            nulls = Arrays.copyOf(nulls, words(capacity(size)));
+            if (type == ColumnType.BOOLEAN) {
+                longs = Arrays.copyOf(longs, nulls.length);
+            }
+        }
+        if (ints != null && size == ints.length) {
+            ints = Arrays.copyOf(ints, capacity(size));
+        } else if (doubles != null && size == doubles.length) {
+            doubles = Arrays.copyOf(doubles, capacity(size));
+        } else if (type == ColumnType.LONG && size == longs.length) {
+            longs = Arrays.copyOf(longs, capacity(size));
+        }
+    }
+
+    private static int capacity(int size) {
+        return Math.max(INITIAL_CAPACITY, size * 2);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+        }
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+}
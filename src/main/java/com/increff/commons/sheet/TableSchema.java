@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Columns to load into a ColumnTable, with the type each column is stored as
+ */
+public class TableSchema {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<ColumnType> types = new ArrayList<>();
+
+    /**
+     * @param name Name of column in the file
+     * @param type Type to store the column as
+     */
+    public void addColumn(String name, ColumnType type) {
+        if (names.contains(name)) {
+            throw new IllegalArgumentException(name + " is already part of the schema");
+        }
+        names.add(name);
+        types.add(type);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public String getName(int col) {
+        return names.get(col);
+    }
+
+    public ColumnType getType(int col) {
+        return types.get(col);
+    }
+
+    public String[] getNames() {
+        return names.toArray(new String[0]);
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+/**
+ * Splits a range of characters on a literal (possibly multi-character) delimiter in a single pass, without regex.
+ * Tokens matching the null value (ignoring case) are returned as null, checked while the token is being cut
+ */
+class Tokenizer {
+
+    private final char[] delim;
+    private final char[] nullValue;
+
+    public Tokenizer(String delim, String nullValue) {
+        if (delim == null || delim.isEmpty()) {
+            throw new IllegalArgumentException("Delimiter cannot be empty");
+        }
+        this.delim = delim.toCharArray();
+        this.nullValue = nullValue == null ? null : nullValue.toCharArray();
+    }
+
+    /**
+     * Split the characters in [start, end) of buf into tokens. Tokens are written into the given array, which is
+     * reused across lines; fields beyond its length are counted but not stored
+     *
+     * @param buf    Characters to split
+     * @param start  Index of first character
+     * @param end    Index just past the last character
+     * @param tokens Array which receives the tokens
+     * @return Number of fields found in the range
+     */
+    public int split(char[] buf, int start, int end, String[] tokens) {
+        int n = 0;
+        int tokenStart = start;
+        if (delim.length == 1) {
+            char d = delim[0];
+            for (int i = start; i < end; i++) {
+                if (buf[i] == d) {
+                    if (n < tokens.length) {
+                        tokens[n] = token(buf, tokenStart, i);
+                    }
+                    n++;
+                    tokenStart = i + 1;
+                }
+            }
+        } else {
+            int last = end - delim.length;
+            int i = start;
+            while (i <= last) {
+                if (isDelimiter(buf, i)) {
+                    if (n < tokens.length) {
+                        tokens[n] = token(buf, tokenStart, i);
+                    }
+                    n++;
+                    i += delim.length;
+                    tokenStart = i;
+                } else {
+                    i++;
+                }
+            }
+        }
+        if (n < tokens.length) {
+            tokens[n] = token(buf, tokenStart, end);
+        }
+        return n + 1;
+    }
+
+    /**
+     * Find the fields in [start, end) of buf without cutting them into strings. The start and end of field k are
+     * written to bounds[2k] and bounds[2k + 1]; fields beyond the length of the array are counted but not stored
+     *
+     * @param buf    Characters to split
+     * @param start  Index of first character
+     * @param end    Index just past the last character
+     * @param bounds Array which receives the field boundaries, reused across lines
+     * @return Number of fields found in the range
+     */
+    public int mark(char[] buf, int start, int end, int[] bounds) {
+        int fields = bounds.length / 2;
+        int n = 0;
+        int tokenStart = start;
+        if (delim.length == 1) {
+            char d = delim[0];
+            for (int i = start; i < end; i++) {
+                if (buf[i] == d) {
+                    if (n < fields) {
+                        bounds[2 * n] = tokenStart;
+                        bounds[2 * n + 1] = i;
+                    }
+                    n++;
+                    tokenStart = i + 1;
+                }
+            }
+        } else {
+            int last = end - delim.length;
+            int i = start;
+            while (i <= last) {
+                if (isDelimiter(buf, i)) {
+                    if (n < fields) {
+                        bounds[2 * n] = tokenStart;
+                        bounds[2 * n + 1] = i;
+                    }
+                    n++;
+                    i += delim.length;
+                    tokenStart = i;
+                } else {
+                    i++;
+                }
+            }
+        }
+        if (n < fields) {
+            bounds[2 * n] = tokenStart;
+            bounds[2 * n + 1] = end;
+        }
+        return n + 1;
+    }
+
+    /**
+     * Split the characters in [start, end) of buf into a new array holding exactly the fields found.
+     * No null value substitution is done, so this is suitable for header lines
+     *
+     * @return Tokens in the range
+     */
+    public String[] splitAll(char[] buf, int start, int end) {
+        String[] tokens = new String[split(buf, start, end, new String[0])];
+        int n = 0;
+        int tokenStart = start;
+        int i = start;
+        while (n < tokens.length - 1) {
+            if (isDelimiter(buf, i)) {
+                tokens[n++] = new String(buf, tokenStart, i - tokenStart);
+                i += delim.length;
+                tokenStart = i;
+            } else {
+                i++;
+            }
+        }
+        tokens[n] = new String(buf, tokenStart, end - tokenStart);
+        return tokens;
+    }
+
+    /**
+     * Check if a token is the null value
+     *
+     * @return true if the characters in [start, end) of buf equal the null value, ignoring case
+     */
+    public boolean isNull(char[] buf, int start, int end) {
+        if (nullValue == null || end - start != nullValue.length) {
+            return false;
+        }
+        for (int i = 0; i < nullValue.length; i++) {
+            char a = buf[start + i];
+            char b = nullValue[i];
+            if (a != b && Character.toUpperCase(a) != Character.toUpperCase(b)
+                    && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Token in [start, end) of buf, null if it is the null value
+     */
+    public String token(char[] buf, int start, int end) {
+        return isNull(buf, start, end) ? null : new String(buf, start, end - start);
+    }
+
+    private boolean isDelimiter(char[] buf, int i) {
+        for (int j = 0; j < delim.length; j++) {
+            if (buf[i + j] != delim[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -24,7 +24,7 @@ public class TsvFile extends AbstractDataFile<DataRow> {
     @Override
     protected DataRow read(DataRow rec) {
         DataRow dataRow = new DataRow(rec.getColumns());
-        dataRow.setTokens(rec.getTokens());
+        dataRow.setTokens(rec.getTokens().clone());
         dataRow.setNumber(rec.getNumber());
         return dataRow;
     }
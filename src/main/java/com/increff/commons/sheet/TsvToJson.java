@@ -15,6 +15,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
 
 public class TsvToJson {
@@ -24,7 +25,7 @@ public class TsvToJson {
         FileInputStream in = new FileInputStream(f);
         tsvFile.read(in);
         tsvFile.getHeaders();
-        ArrayList<DataRow> list = tsvFile.getData();
+        List<DataRow> list = tsvFile.getData();
 
         ArrayList<HashMap<String, Object>> values = new ArrayList<>();
         for (DataRow d : list) {
@@ -11,8 +11,15 @@
 
 package com.increff.commons.sheet;
 
+import java.time.LocalDate;
+
 public class ChannelStockFile extends AbstractDataFile<ChannelStockRow> {
 
+    private final ColumnRef<Integer> channel = columns.intCol("channel");
+    private final ColumnRef<LocalDate> day = columns.localDateCol("day");
+    private final ColumnRef<Integer> sku = columns.intCol("sku");
+    private final ColumnRef<Integer> qty = columns.intCol("qty");
+
     public ChannelStockFile() {
         setProgressMonitor(new DataFileMonitor());
         setMaxRows(20_00_0000);
@@ -26,10 +33,10 @@ public class ChannelStockFile extends AbstractDataFile<ChannelStockRow> {
     @Override
     protected ChannelStockRow read(DataRow r) throws Exception {
         ChannelStockRow o = new ChannelStockRow();
-        o.channel = r.getInteger("channel");
-        o.day = r.getLocalDate("day");
-        o.sku = r.getInteger("sku");
-        o.qty = r.getInteger("qty");
+        o.channel = channel.getInt(r, 0);
+        o.day = day.getLocalDate(r);
+        o.sku = sku.getInt(r, 0);
+        o.qty = qty.getInt(r, 0);
         return o;
     }
 
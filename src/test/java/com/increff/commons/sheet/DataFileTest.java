@@ -14,10 +14,28 @@ package com.increff.commons.sheet;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 
@@ -34,6 +52,9 @@ public class DataFileTest {
     @Rule
     public ExpectedException expectedEx = ExpectedException.none();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     public static InputStream getInputStream(String resource) {
         return DataFileTest.class.getResourceAsStream(resource);
     }
@@ -44,7 +65,7 @@ public class DataFileTest {
         InputStream gzipStream = new GZIPInputStream(fileStream);
         ChannelStockFile dataFile = new ChannelStockFile();
         dataFile.read(gzipStream);
-        ArrayList<ChannelStockRow> data = dataFile.getData();
+        List<ChannelStockRow> data = dataFile.getData();
         assertEquals( 18_056_161, data.size());
     }
 
@@ -71,6 +92,552 @@ public class DataFileTest {
         assertTrue(dataFile.getErrors().stream().map(k -> k.getError()).collect(Collectors.toSet()).contains("Invalid column:sku"));
     }
 
+    @Test
+    public void testReadStreaming() throws Exception {
+        ChannelStockFile dataFile = new ChannelStockFile();
+        List<ChannelStockRow> rows = new ArrayList<>();
+        dataFile.read(getInputStream(CHANNELSTOCK_FILE_ERROR1), rows::add);
+        assertEquals(1, rows.size());
+        assertEquals(123, rows.get(0).sku);
+        assertEquals(1, dataFile.getErrors().size());
+        assertEquals(2, dataFile.getErrors().get(0).getRow());
+        assertNull(dataFile.getData());
+    }
+
+    @Test
+    public void testReadCursor() throws Exception {
+        ChannelStockFile dataFile = new ChannelStockFile();
+        try (RowCursor<ChannelStockRow> cursor = dataFile.openCursor(getInputStream(CHANNELSTOCK_FILE_ERROR3))) {
+            assertTrue(cursor.hasNext());
+            assertEquals(LocalDate.of(2018, 9, 11), cursor.next().day);
+            assertFalse(cursor.hasNext());
+        }
+        assertEquals(1, dataFile.getErrors().size());
+    }
+
+    @Test
+    public void testReadColumnRefs() throws Exception {
+        // ChannelStockFile reads through column handles, bound to the order of columns in the file
+        String content = "qty\tsku\tday\tchannel\n5\t123\t2019-01-15\t2";
+        ChannelStockFile dataFile = new ChannelStockFile();
+        dataFile.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        ChannelStockRow row = dataFile.getData().get(0);
+        assertEquals(2, row.channel);
+        assertEquals(LocalDate.of(2019, 1, 15), row.day);
+        assertEquals(123, row.sku);
+        assertEquals(5, row.qty);
+
+        // Missing columns fail when the file is opened, not per row
+        expectedEx.expect(SheetException.class);
+        expectedEx.expectMessage("mrp are not found in the file");
+        dataFile.columns.doubleCol("mrp");
+        dataFile.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testReadStreamingMaxRows() throws Exception {
+        expectedEx.expect(SheetException.class);
+        expectedEx.expectMessage("Maximum rows allowed is : 1");
+        ChannelStockFile dataFile = new ChannelStockFile();
+        dataFile.setMaxRows(1);
+        dataFile.read(getInputStream(CHANNELSTOCK_FILE_ERROR3), r -> {
+        });
+    }
+
+    @Test
+    public void testReadParallel() throws Exception {
+        String content = getChannelStockContent(20_000);
+        ChannelStockFile sequential = new ChannelStockFile();
+        sequential.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        ChannelStockFile parallel = new ChannelStockFile();
+        parallel.setParallelism(4);
+        parallel.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(sequential.getData().size(), parallel.getData().size());
+        for (int i = 0; i < sequential.getData().size(); i++) {
+            assertEquals(sequential.getData().get(i).sku, parallel.getData().get(i).sku);
+        }
+        assertEquals(sequential.getErrors().size(), parallel.getErrors().size());
+        for (int i = 0; i < sequential.getErrors().size(); i++) {
+            assertEquals(sequential.getErrors().get(i).getRow(), parallel.getErrors().get(i).getRow());
+            assertEquals(sequential.getErrors().get(i).getError(), parallel.getErrors().get(i).getError());
+        }
+    }
+
+    @Test
+    public void testReadLazyColumns() throws Exception {
+        // Wide file of which ChannelStockFile reads four columns
+        StringBuilder sb = new StringBuilder();
+        String[] lines = getChannelStockContent(5_000).split("\n");
+        for (int l = 0; l < lines.length; l++) {
+            sb.append(lines[l]);
+            for (int c = 0; c < 100; c++) {
+                sb.append('\t').append(l == 0 ? "extra" + c : c % 2 == 0 ? "NULL" : "x");
+            }
+            sb.append('\n');
+        }
+        String content = sb.toString();
+        ChannelStockFile eager = new ChannelStockFile();
+        eager.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+
+        File file = folder.newFile("wide.tsv");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        for (int parallelism : new int[]{1, 4}) {
+            ChannelStockFile lazy = new ChannelStockFile();
+            lazy.setLazyColumns(true);
+            lazy.setParallelism(parallelism);
+            lazy.read(file);
+
+            assertEquals(eager.getData().size(), lazy.getData().size());
+            for (int i = 0; i < eager.getData().size(); i++) {
+                assertEquals(eager.getData().get(i).sku, lazy.getData().get(i).sku);
+                assertEquals(eager.getData().get(i).qty, lazy.getData().get(i).qty);
+                assertEquals(eager.getData().get(i).day, lazy.getData().get(i).day);
+            }
+            assertEquals(eager.getErrors().size(), lazy.getErrors().size());
+            for (int i = 0; i < eager.getErrors().size(); i++) {
+                assertEquals(eager.getErrors().get(i).getRow(), lazy.getErrors().get(i).getRow());
+                assertEquals(eager.getErrors().get(i).getError(), lazy.getErrors().get(i).getError());
+            }
+        }
+
+        // Tokens are cut on access, with null values substituted
+        TsvFile tsv = new TsvFile();
+        tsv.setLazyColumns(true);
+        tsv.read(new ByteArrayInputStream("a\tb\tc\n1\tnull\t3".getBytes(StandardCharsets.UTF_8)));
+        assertArrayEquals(new String[]{"1", null, "3"}, tsv.getData().get(0).getTokens());
+    }
+
+    @Test
+    public void testReadTable() throws Exception {
+        ChannelStockFile dataFile = new ChannelStockFile();
+        assertReadTable(dataFile, getChannelStockContent(20_000), folder.newFile("channelstock.csv"));
+    }
+
+    @Test
+    public void testReadUtf8() throws Exception {
+        ChannelStockFile dataFile = new ChannelStockFile();
+        assertReadUtf8(dataFile, folder.newFile("utf8.csv"));
+    }
+
+    @Test
+    public void testReadParallelMaxRows() throws Exception {
+        ChannelStockFile dataFile = new ChannelStockFile();
+        dataFile.setParallelism(4);
+        dataFile.setMaxRows(10_000);
+        List<ChannelStockRow> rows = new ArrayList<>();
+        try {
+            dataFile.read(new ByteArrayInputStream(getChannelStockContent(20_000).getBytes(StandardCharsets.UTF_8)), rows::add);
+            fail("Expected maxRows to be exceeded");
+        } catch (SheetException e) {
+            assertEquals("Maximum rows allowed is : 10000", e.getMessage());
+        }
+        assertEquals(10_000, rows.size() + dataFile.getErrors().size());
+    }
+
+    @Test
+    public void testReadFileParallel() throws Exception {
+        String content = getChannelStockContent(50_000) + "\r\n" + getChannelStockContent(100).substring(19);
+        File file = folder.newFile("channelstock.tsv");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        FileSystem fs = new FileSystem(folder.getRoot());
+        ChannelStockFile sequential = new ChannelStockFile();
+        fs.read("channelstock.tsv", sequential);
+        ChannelStockFile parallel = new ChannelStockFile();
+        parallel.setParallelism(4);
+        fs.read("channelstock.tsv", parallel);
+
+        assertEquals(sequential.getData().size(), parallel.getData().size());
+        for (int i = 0; i < sequential.getData().size(); i++) {
+            assertEquals(sequential.getData().get(i).sku, parallel.getData().get(i).sku);
+        }
+        assertEquals(sequential.getErrors().size(), parallel.getErrors().size());
+        for (int i = 0; i < sequential.getErrors().size(); i++) {
+            assertEquals(sequential.getErrors().get(i).getRow(), parallel.getErrors().get(i).getRow());
+            assertEquals(sequential.getErrors().get(i).getError(), parallel.getErrors().get(i).getError());
+        }
+    }
+
+    @Test
+    public void testDefaultMethods() throws Exception {
+        // An implementation with only the original methods gets the streaming API through read() and write()
+        LineFile file = new LineFile();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (RowWriter<String> writer = file.openWriter(os)) {
+            writer.appendAll(Arrays.asList("a", "b", "c"));
+        }
+        assertEquals("a\nb\nc\n", new String(os.toByteArray(), StandardCharsets.UTF_8));
+
+        List<String> rows = new ArrayList<>();
+        file.read(new ByteArrayInputStream(os.toByteArray()), rows::add);
+        assertEquals(Arrays.asList("a", "b", "c"), rows);
+        rows.clear();
+        try (RowCursor<String> cursor = file.openCursor(new ByteArrayInputStream(os.toByteArray()))) {
+            cursor.forEachRemaining(rows::add);
+        }
+        assertEquals(Arrays.asList("a", "b", "c"), rows);
+        File lines = folder.newFile("lines.txt");
+        Files.write(lines.toPath(), os.toByteArray());
+        file.read(lines);
+        assertEquals(Arrays.asList("a", "b", "c"), file.getData());
+        assertTrue(file.getErrors().isEmpty());
+
+        expectedEx.expect(SheetException.class);
+        expectedEx.expectMessage("Columnar reads are not supported by " + LineFile.class.getName());
+        file.readTable(new ByteArrayInputStream(os.toByteArray()), new TableSchema());
+    }
+
+    private static class LineFile implements IDataFile<String> {
+        private List<String> data = new ArrayList<>();
+
+        @Override
+        public String getFileExtension() {
+            return ".txt";
+        }
+
+        @Override
+        public void setMaxRows(Integer maxRows) {
+        }
+
+        @Override
+        public void setData(List<String> data) {
+            this.data = data;
+        }
+
+        @Override
+        public List<String> getData() {
+            return data;
+        }
+
+        @Override
+        public void write(OutputStream os) throws IOException {
+            for (String line : data) {
+                os.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        @Override
+        public void read(InputStream is) throws Exception {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+            data = reader.lines().collect(Collectors.toList());
+        }
+
+        @Override
+        public void setProgressMonitor(IProgressMonitor progress) {
+        }
+    }
+
+    @Test
+    public void testReadDataset() throws Exception {
+        File dir = folder.newFolder("channelstock");
+        for (int part = 0; part < 12; part++) {
+            StringBuilder content = new StringBuilder("channel\tday\tsku\tqty");
+            for (int i = 0; i < 100; i++) {
+                content.append('\n').append(part == 5 && i == 41 ? "C1" : "1").append("\t2019-01-15\t")
+                        .append(part * 100 + i).append("\t5");
+            }
+            Files.write(new File(dir, String.format("part-%04d.tsv", part)).toPath(),
+                    content.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(new File(dir, "_SUCCESS").toPath(), new byte[0]);
+        Files.write(new File(dir, "readme.txt").toPath(), new byte[0]);
+
+        FileSystem fs = new FileSystem(folder.getRoot());
+        fs.setParallelism(3);
+        Dataset<ChannelStockRow> dataset = fs.readDataset("channelstock", ChannelStockFile::new);
+        assertEquals(12, dataset.getFiles().size());
+        assertEquals("channelstock" + File.separator + "part-0000.tsv", dataset.getFiles().get(0));
+        assertEquals(1199, dataset.getData().size());
+        for (int i = 0; i < dataset.getData().size(); i++) {
+            assertEquals(i < 541 ? i : i + 1, dataset.getData().get(i).sku);
+        }
+        assertEquals(1, dataset.getErrors().size());
+        assertEquals("channelstock" + File.separator + "part-0005.tsv", dataset.getErrors().get(0).getFile());
+        assertEquals(42, dataset.getErrors().get(0).getRow());
+
+        dataset = fs.readDataset("channelstock/part-000[2-4].tsv", ChannelStockFile::new);
+        assertEquals(3, dataset.getFiles().size());
+        assertEquals(300, dataset.getData().size());
+        assertEquals(200, dataset.getData().get(0).sku);
+
+        // A file which cannot be read fails the dataset, naming the file
+        Files.write(new File(dir, "part-0012.tsv").toPath(), "sku\n1".getBytes(StandardCharsets.UTF_8));
+        expectedEx.expect(SheetException.class);
+        expectedEx.expectMessage("Error reading channelstock" + File.separator + "part-0012.tsv");
+        fs.readDataset("channelstock", ChannelStockFile::new);
+    }
+
+    @Test
+    public void testPrimitiveGetters() {
+        DataRow r = getDataRow();
+        r.setToken("qty", null);
+        assertEquals(1, r.getInt("sku", -1));
+        assertEquals(-1, r.getInt("qty", -1));
+        assertTrue(r.isNull("qty"));
+        assertFalse(r.isNull(0));
+
+        // Same results and failures as the JDK parsers
+        String[] values = {"0", "-0", "+7", "123", "-2147483648", "2147483647", "2147483648", "9223372036854775807",
+                "-9223372036854775809", "1.5", "-0.25", ".5", "1.", "12345.678901234567", "1e3", "NaN", " 4", "",
+                "-", "C1", "TRUE", "true", "yes"};
+        for (String value : values) {
+            r.setToken(0, value);
+            assertEquals(value, parse(() -> Integer.parseInt(value)), parse(() -> r.getInt(0, 0)));
+            assertEquals(value, parse(() -> Long.parseLong(value)), parse(() -> r.getLong(0, 0)));
+            assertEquals(value, parse(() -> Double.parseDouble(value)), parse(() -> r.getDouble(0, 0)));
+            assertEquals(value, Boolean.parseBoolean(value), r.getBoolean(0, false));
+        }
+    }
+
+    private static Object parse(Callable<Object> parser) {
+        try {
+            return parser.call();
+        } catch (Exception e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+
+    @Test
+    public void testStringInterner() throws Exception {
+        StringInterner interner = new StringInterner(8);
+        String s = interner.intern("style-1");
+        assertSame(s, interner.intern("xstyle-1x".toCharArray(), 1, 8));
+        assertSame(s, interner.intern("style-1".getBytes(StandardCharsets.UTF_8), 0, 7));
+        assertEquals("\u00e9t\u00e9", interner.intern("\u00e9t\u00e9".getBytes(StandardCharsets.UTF_8), 0, 5));
+        assertEquals(2, interner.getHits());
+        assertEquals(2, interner.getMisses());
+        // Bounded, older strings are dropped
+        for (int i = 0; i < 1000; i++) {
+            interner.intern("value" + i);
+        }
+        assertTrue(interner.size() <= interner.getCapacity());
+        assertEquals(8, interner.getCapacity());
+
+        // Equal values of a read share one string, eagerly or straight from the line buffer
+        StringBuilder content = new StringBuilder("channel\tsku");
+        for (int i = 0; i < 2_000; i++) {
+            content.append('\n').append(i % 7).append('\t').append(i);
+        }
+        StringInterner shared = new StringInterner();
+        for (boolean lazy : new boolean[]{false, true}) {
+            ChannelFile file = new ChannelFile();
+            file.setLazyColumns(lazy);
+            file.setInterner(shared);
+            file.read(new ByteArrayInputStream(content.toString().getBytes(StandardCharsets.UTF_8)));
+            List<String> channels = file.getData();
+            assertEquals(2_000, channels.size());
+            for (int i = 0; i < channels.size(); i++) {
+                assertEquals(String.valueOf(i % 7), channels.get(i));
+                assertSame(channels.get(i % 7), channels.get(i));
+            }
+        }
+        assertEquals(7, shared.getMisses());
+        assertEquals(3_993, shared.getHits());
+    }
+
+    private static class ChannelFile extends AbstractDataFile<String> {
+
+        @Override
+        protected String[] getHeaders() {
+            return new String[]{"channel"};
+        }
+
+        @Override
+        protected String read(DataRow r) {
+            return r.getStringIntern("channel");
+        }
+
+        @Override
+        protected void write(DataRow r, String o) {
+            r.setToken(0, o);
+        }
+    }
+
+    @Test
+    public void testDateParsing() throws Exception {
+        DataRow r = getDataRow();
+        // Same results and failures as the JDK parsers, whether memoized or not
+        String[] values = {"2019-01-15", "2019-01-15", "2020-02-29", "2019-02-29", "2019-01-32", "0000-01-01",
+                "+12019-01-15", "2019-1-15", "2019/01/15", "2019-01", "2019-13", "abcd-01", "", "2019-01-15 "};
+        for (boolean memo : new boolean[]{true, false}) {
+            r.setDateMemo(memo);
+            for (String value : values) {
+                r.setToken(2, value);
+                assertEquals(value, parse(() -> LocalDate.parse(value)), parse(() -> r.getLocalDate(2)));
+                assertEquals(value, parse(() -> YearMonth.parse(value)), parse(() -> r.getYearMonth("day")));
+            }
+        }
+        r.setDateMemo(true);
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        r.setToken(2, "23/01/2018");
+        assertEquals(LocalDate.of(2018, 1, 23), r.getLocalDate("day", formatter));
+        r.setToken(2, "01/2018");
+        assertEquals(YearMonth.of(2018, 1), r.getYearMonth(2, DateTimeFormatter.ofPattern("MM/yyyy")));
+    }
+
+    @Test
+    public void testWriteIncremental() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ChannelFile file = new ChannelFile();
+        try (RowWriter<String> writer = file.openWriter(os)) {
+            writer.append("a");
+            writer.appendAll(Arrays.asList("b", null, "c"));
+            assertEquals(4, writer.getCount());
+        }
+        assertEquals("channel\na\nb\nnull\nc", new String(os.toByteArray(), StandardCharsets.UTF_8));
+
+        // write() streams setData() through the same writer
+        file.setData(Arrays.asList("a", "b", null, "c"));
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        file.write(all);
+        assertArrayEquals(os.toByteArray(), all.toByteArray());
+    }
+
+    @Test
+    public void testWriteTyped() throws Exception {
+        List<ChannelStockRow> rows = new ArrayList<>();
+        StringBuilder expected = new StringBuilder("channel\tday\tsku\tqty\tname");
+        for (int i = 0; i < 1000; i++) {
+            ChannelStockRow row = new ChannelStockRow();
+            row.channel = i % 7 - 3;
+            row.day = i % 10 == 0 ? null : LocalDate.of(2019, 1, 1).plusDays(i);
+            row.sku = i * 1_000_003;
+            row.qty = i;
+            rows.add(row);
+            expected.append('\n').append(row.channel).append('\t').append(row.day == null ? "NULL" : row.day)
+                    .append('\t').append((long) row.sku * 1000).append('\t').append(row.qty / 8.0)
+                    .append('\t').append(i % 2 == 0).append(" \u00e9\u20ac\ud834\udd1e");
+        }
+        StockWriteFile file = new StockWriteFile();
+        file.setNullValue("NULL");
+        file.setWriteBufferSize(64);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (RowWriter<ChannelStockRow> writer = file.openWriter(os)) {
+            writer.appendAll(rows);
+        }
+        assertEquals(expected.toString(), new String(os.toByteArray(), StandardCharsets.UTF_8));
+
+        // Typed values read back as their tokens
+        DataRow r = getDataRow();
+        r.setDouble(0, 2.5);
+        r.setLocalDate("day", LocalDate.of(2020, 2, 29));
+        r.setBoolean(3, true);
+        assertArrayEquals(new String[]{"2.5", "1", "2020-02-29", "true"}, r.getTokens());
+
+        // Doubles are written as Double.toString() would, and always read back as the same value
+        double[] doubles = {0.0, -0.0, 1.0, -2.5, 0.001, 0.1, 0.3, 123.45, 9999999.99, 1e7, 1e-4, 0.1 + 0.2, 1.0 / 3,
+                Double.NaN, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE, Long.MIN_VALUE};
+        // Longs of every digit count up to 19, both signs
+        long[] longs = {0, 9, 10, 123456789012345678L, 100_000_000_000_000_000L, 999_999_999_999_999_999L,
+                1_000_000_000_000_000_000L, Long.MAX_VALUE};
+        Random random = new Random(7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (LineWriter writer = new LineWriter(out, 64)) {
+            for (double d : doubles) {
+                writer.writeDouble(d);
+                writer.write("\n");
+            }
+            for (int i = 0; i < 10_000; i++) {
+                writer.writeDouble(random.nextDouble() * 1000);
+                writer.write("\n");
+            }
+            for (long l : longs) {
+                writer.writeLong(l);
+                writer.write("\n");
+                writer.writeLong(-l);
+                writer.write("\n");
+            }
+            writer.writeLong(Long.MIN_VALUE);
+        }
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        for (int i = 0; i < doubles.length; i++) {
+            assertEquals(Double.toString(doubles[i]), lines[i]);
+        }
+        random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(random.nextDouble() * 1000, Double.parseDouble(lines[doubles.length + i]), 0);
+        }
+        for (int i = 0; i < longs.length; i++) {
+            assertEquals(Long.toString(longs[i]), lines[doubles.length + 10_000 + 2 * i]);
+            assertEquals(Long.toString(-longs[i]), lines[doubles.length + 10_000 + 2 * i + 1]);
+        }
+        assertEquals(Long.toString(Long.MIN_VALUE), lines[lines.length - 1]);
+    }
+
+    private static class StockWriteFile extends AbstractDataFile<ChannelStockRow> {
+
+        @Override
+        protected String[] getHeaders() {
+            return new String[]{"channel", "day", "sku", "qty", "name"};
+        }
+
+        @Override
+        protected ChannelStockRow read(DataRow r) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void write(DataRow r, ChannelStockRow o) {
+            r.setInt(0, o.channel);
+            r.setLocalDate(1, o.day);
+            r.setLong("sku", (long) o.sku * 1000);
+            r.setDouble("qty", o.qty / 8.0);
+            r.setToken(4, (o.qty % 2 == 0) + " \u00e9\u20ac\ud834\udd1e");
+        }
+    }
+
+    @Test
+    public void testWriteCompressed() throws Exception {
+        List<String> channels = new ArrayList<>();
+        for (int i = 0; i < 90_000; i++) {
+            channels.add("channel-" + (i % 1000) + "-" + i);
+        }
+        FileSystem fs = new FileSystem(folder.getRoot());
+        for (Compression compression : new Compression[]{Compression.GZIP, Compression.ZSTD, Compression.LZ4}) {
+            // Chosen by the file extension, and compressed in several blocks
+            ChannelFile file = new ChannelFile();
+            file.setFileExtension(".tsv" + compression.getSuffix());
+            file.setCompressionThreads(3);
+            file.setData(channels);
+            String name = "channels" + file.getFileExtension();
+            fs.write(name, file);
+            File written = new File(folder.getRoot(), name);
+            assertEquals(compression, Compression.detect(written));
+            assertTrue(written.length() < 1_000_000);
+
+            // Detected from the data, including when the file would otherwise be memory mapped
+            ChannelFile readFile = new ChannelFile();
+            readFile.setParallelism(2);
+            fs.read(name, readFile);
+            assertEquals(channels.size(), readFile.getData().size());
+            for (int i = 0; i < channels.size(); i++) {
+                assertEquals(channels.get(i), readFile.getData().get(i));
+            }
+        }
+
+        // Blocks are complete gzip members, so standard gzip reads the whole file
+        try (InputStream is = new GZIPInputStream(new FileInputStream(new File(folder.getRoot(), "channels.tsv.gz")))) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            for (int n; (n = is.read(buf)) > 0; ) {
+                bos.write(buf, 0, n);
+            }
+            assertEquals("channel\n" + String.join("\n", channels), bos.toString("UTF-8"));
+        }
+
+        // Explicit compression, read back from a stream
+        ChannelFile file = new ChannelFile();
+        file.setCompression(Compression.ZSTD);
+        file.setCompressionThreads(1);
+        file.setData(channels);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        file.write(os);
+        ChannelFile readFile = new ChannelFile();
+        readFile.read(new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(channels.size(), readFile.getData().size());
+        assertEquals(channels.get(89_999), readFile.getData().get(89_999));
+    }
+
     @Test
     public void testWrite() {
         expectedEx.expect(RuntimeException.class);
@@ -79,6 +646,70 @@ public class DataFileTest {
         file.write(getDataRow(), new ChannelStockRow());
     }
 
+    static void assertReadTable(IDataFile<ChannelStockRow> dataFile, String content, File file) throws Exception {
+        dataFile.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        List<ChannelStockRow> data = new ArrayList<>(dataFile.getData());
+        List<RowError> errors = new ArrayList<>(dataFile.getErrors());
+
+        TableSchema schema = new TableSchema();
+        schema.addColumn("channel", ColumnType.STRING);
+        schema.addColumn("day", ColumnType.DATE);
+        schema.addColumn("sku", ColumnType.LONG);
+        schema.addColumn("qty", ColumnType.INT);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        ColumnTable[] tables = {
+                dataFile.readTable(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), schema),
+                dataFile.readTable(file, schema)};
+
+        // Same rows and errors as when mapping rows
+        for (ColumnTable table : tables) {
+            assertEquals(data.size(), table.size());
+            for (int i = 0; i < table.size(); i++) {
+                ChannelStockRow row = data.get(i);
+                assertEquals(String.valueOf(row.channel), table.getString(i, 0));
+                assertEquals(row.day, table.getLocalDate(i, 1));
+                assertEquals(row.sku, table.getLong(i, 2, -1));
+                assertEquals(row.qty, table.getColumn("qty").getInt(i, -1));
+            }
+            assertEquals(errors.size(), dataFile.getErrors().size());
+            for (int i = 0; i < errors.size(); i++) {
+                assertEquals(errors.get(i).getRow(), dataFile.getErrors().get(i).getRow());
+            }
+            assertEquals(7, table.getColumn("channel").getDictionary().size());
+        }
+
+        schema.addColumn("mrp", ColumnType.DOUBLE);
+        try {
+            dataFile.readTable(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), schema);
+            fail("Expected missing column");
+        } catch (SheetException e) {
+            assertTrue(e.getMessage().contains("mrp are not found in the file"));
+        }
+    }
+
+    static void assertReadUtf8(IDataFile<ChannelStockRow> dataFile, File file) throws Exception {
+        String content = "channel\tday\tsku\tqty\tremarque\n1\t2019-01-15\t1\t2\tCafé 10€\n2\t2019-01-15\t2\t3\t東京";
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        TableSchema schema = new TableSchema();
+        schema.addColumn("remarque", ColumnType.STRING);
+
+        // Files are UTF-8 whatever the platform charset, as they are written by LineWriter
+        ColumnTable table = dataFile.readTable(file, schema);
+        assertEquals("Café 10€", table.getString(0, 0));
+        assertEquals("東京", table.getString(1, 0));
+        dataFile.read(file);
+        assertEquals(2, dataFile.getData().size());
+    }
+
+    public static String getChannelStockContent(int lines) {
+        StringBuilder sb = new StringBuilder("channel\tday\tsku\tqty");
+        for (int i = 1; i <= lines; i++) {
+            sb.append("\n").append(i % 7).append("\t2019-01-").append(i % 1000 == 0 ? "32" : "15")
+                    .append("\t").append(i).append(i % 997 == 0 ? "" : "\t" + i % 13);
+        }
+        return sb.toString();
+    }
+
     public static DataRow getDataRow() {
         HashMap<String, Integer> map = new HashMap<>();
         map.put("channel", 0);
@@ -11,13 +11,27 @@
 
 package com.increff.commons.sheet;
 
+import org.junit.Assume;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 
@@ -34,6 +48,9 @@ public class DataTSVFileTest {
     @Rule
     public ExpectedException expectedEx = ExpectedException.none();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     public static InputStream getInputStream(String resource) {
         return DataTSVFileTest.class.getResourceAsStream(resource);
     }
@@ -44,7 +61,7 @@ public class DataTSVFileTest {
         InputStream gzipStream = new GZIPInputStream(fileStream);
         ChannelStockTSVFile dataFile = new ChannelStockTSVFile();
         dataFile.read(gzipStream);
-        ArrayList<ChannelStockRow> data = dataFile.getData();
+        List<ChannelStockRow> data = dataFile.getData();
         assertEquals( 18_056_161, data.size());
     }
 
@@ -71,6 +88,170 @@ public class DataTSVFileTest {
         assertTrue(dataFile.getErrors().stream().map(k -> k.getError()).collect(Collectors.toSet()).contains("Invalid column:sku"));
     }
 
+    @Test
+    public void testReadStreaming() throws Exception {
+        ChannelStockTSVFile dataFile = new ChannelStockTSVFile();
+        List<ChannelStockRow> rows = new ArrayList<>();
+        dataFile.read(getInputStream(CHANNELSTOCK_FILE_ERROR1), rows::add);
+        assertEquals(1, rows.size());
+        assertEquals(123, rows.get(0).sku);
+        assertEquals(1, dataFile.getErrors().size());
+        assertEquals(2, dataFile.getErrors().get(0).getRow());
+        assertNull(dataFile.getData());
+    }
+
+    @Test
+    public void testReadCursor() throws Exception {
+        ChannelStockTSVFile dataFile = new ChannelStockTSVFile();
+        try (RowCursor<ChannelStockRow> cursor = dataFile.openCursor(getInputStream(CHANNELSTOCK_FILE_ERROR3))) {
+            assertTrue(cursor.hasNext());
+            assertEquals(LocalDate.of(2018, 9, 11), cursor.next().day);
+            assertFalse(cursor.hasNext());
+        }
+        assertEquals(1, dataFile.getErrors().size());
+    }
+
+    @Test
+    public void testReadStreamingMaxRows() throws Exception {
+        expectedEx.expect(SheetException.class);
+        expectedEx.expectMessage("Maximum rows allowed is : 1");
+        ChannelStockTSVFile dataFile = new ChannelStockTSVFile();
+        dataFile.setMaxRows(1);
+        dataFile.read(getInputStream(CHANNELSTOCK_FILE_ERROR3), r -> {
+        });
+    }
+
+    @Test
+    public void testReadParallel() throws Exception {
+        String content = getChannelStockContent(20_000);
+        ChannelStockTSVFile sequential = new ChannelStockTSVFile();
+        sequential.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        ChannelStockTSVFile parallel = new ChannelStockTSVFile();
+        parallel.setParallelism(4);
+        parallel.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(sequential.getData().size(), parallel.getData().size());
+        for (int i = 0; i < sequential.getData().size(); i++) {
+            assertEquals(sequential.getData().get(i).sku, parallel.getData().get(i).sku);
+        }
+        assertEquals(sequential.getErrors().size(), parallel.getErrors().size());
+        for (int i = 0; i < sequential.getErrors().size(); i++) {
+            assertEquals(sequential.getErrors().get(i).getRow(), parallel.getErrors().get(i).getRow());
+            assertEquals(sequential.getErrors().get(i).getError(), parallel.getErrors().get(i).getError());
+        }
+
+        // Mapped segments split at the same records as opencsv, with escapes outside quotes, escaped and doubled
+        // quotes, and quoted fields spanning lines
+        StringBuilder quoted = new StringBuilder("channel\tday\tsku\tqty\tnote");
+        for (int i = 1; i <= 20_000; i++) {
+            String note = i % 5 == 0 ? "5\\\"" : i % 7 == 0 ? "\"line\nbreak\"" : i % 11 == 0 ? "\"say \\\"hi\\\"\""
+                    : i % 13 == 0 ? "\"a\"\"b\"" : "x";
+            quoted.append("\n").append(i % 7).append("\t2019-01-").append(i % 1000 == 0 ? "32" : "15")
+                    .append("\t").append(i).append("\t").append(i % 13).append("\t").append(note);
+        }
+        File file = folder.newFile("quoted.tsv");
+        Files.write(file.toPath(), quoted.toString().getBytes(StandardCharsets.UTF_8));
+        sequential = new ChannelStockTSVFile();
+        sequential.read(new ByteArrayInputStream(quoted.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(20_000, sequential.getData().size() + sequential.getErrors().size());
+        parallel = new ChannelStockTSVFile();
+        parallel.setParallelism(4);
+        parallel.read(file);
+        assertEquals(sequential.getData().size(), parallel.getData().size());
+        for (int i = 0; i < sequential.getData().size(); i++) {
+            assertEquals(sequential.getData().get(i).sku, parallel.getData().get(i).sku);
+        }
+        assertEquals(20, parallel.getErrors().size());
+        for (int i = 0; i < sequential.getErrors().size(); i++) {
+            assertEquals(sequential.getErrors().get(i).getRow(), parallel.getErrors().get(i).getRow());
+        }
+    }
+
+    @Test
+    public void testReadTable() throws Exception {
+        ChannelStockTSVFile dataFile = new ChannelStockTSVFile();
+        DataFileTest.assertReadTable(dataFile, getChannelStockContent(20_000), folder.newFile("channelstock.tsv"));
+    }
+
+    @Test
+    public void testReadUtf8() throws Exception {
+        ChannelStockTSVFile dataFile = new ChannelStockTSVFile();
+        DataFileTest.assertReadUtf8(dataFile, folder.newFile("utf8.tsv"));
+
+        // Written as UTF-8 too
+        List<String> channels = Arrays.asList("Café 10€", "東京");
+        ChannelTSVFile file = new ChannelTSVFile();
+        file.setData(channels);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        file.write(os);
+        assertTrue(new String(os.toByteArray(), StandardCharsets.UTF_8).contains("Café 10€"));
+        ChannelTSVFile readFile = new ChannelTSVFile();
+        readFile.read(new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(channels, readFile.getData());
+    }
+
+    @Test
+    public void testReadParallelMaxRows() throws Exception {
+        ChannelStockTSVFile dataFile = new ChannelStockTSVFile();
+        dataFile.setParallelism(4);
+        dataFile.setMaxRows(10_000);
+        List<ChannelStockRow> rows = new ArrayList<>();
+        try {
+            dataFile.read(new ByteArrayInputStream(getChannelStockContent(20_000).getBytes(StandardCharsets.UTF_8)), rows::add);
+            fail("Expected maxRows to be exceeded");
+        } catch (SheetException e) {
+            assertEquals("Maximum rows allowed is : 10000", e.getMessage());
+        }
+        assertEquals(10_000, rows.size() + dataFile.getErrors().size());
+    }
+
+    @Test
+    public void testReadFileParallel() throws Exception {
+        String content = getChannelStockContent(50_000) + "\n\"4\n5\"\t\"2019-01-01\"\t1\t2" + getChannelStockContent(100).substring(19);
+        File file = folder.newFile("channelstock.tsv");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        FileSystem fs = new FileSystem(folder.getRoot());
+        ChannelStockTSVFile sequential = new ChannelStockTSVFile();
+        fs.read("channelstock.tsv", sequential);
+        ChannelStockTSVFile parallel = new ChannelStockTSVFile();
+        parallel.setParallelism(4);
+        fs.read("channelstock.tsv", parallel);
+
+        assertEquals(sequential.getData().size(), parallel.getData().size());
+        for (int i = 0; i < sequential.getData().size(); i++) {
+            assertEquals(sequential.getData().get(i).sku, parallel.getData().get(i).sku);
+        }
+        assertEquals(sequential.getErrors().size(), parallel.getErrors().size());
+        for (int i = 0; i < sequential.getErrors().size(); i++) {
+            assertEquals(sequential.getErrors().get(i).getRow(), parallel.getErrors().get(i).getRow());
+            assertEquals(sequential.getErrors().get(i).getError(), parallel.getErrors().get(i).getError());
+        }
+    }
+
+    @Test
+    public void testReadCompressed() throws Exception {
+        String content = getChannelStockContent(20_000);
+        ChannelStockTSVFile expected = new ChannelStockTSVFile();
+        expected.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        FileSystem fs = new FileSystem(folder.getRoot());
+        for (Compression compression : new Compression[]{Compression.GZIP, Compression.ZSTD, Compression.LZ4}) {
+            File file = new File(folder.getRoot(), "channelstock.tsv" + compression.getSuffix());
+            try (OutputStream os = compression.compress(new FileOutputStream(file), 2)) {
+                os.write(content.getBytes(StandardCharsets.UTF_8));
+            }
+            for (int parallelism : new int[]{1, 4}) {
+                ChannelStockTSVFile readFile = new ChannelStockTSVFile();
+                readFile.setParallelism(parallelism);
+                fs.read(file.getName(), readFile);
+                assertEquals(expected.getData().size(), readFile.getData().size());
+                for (int i = 0; i < expected.getData().size(); i++) {
+                    assertEquals(expected.getData().get(i).sku, readFile.getData().get(i).sku);
+                }
+                assertEquals(expected.getErrors().size(), readFile.getErrors().size());
+            }
+        }
+    }
+
     @Test
     public void testWrite() {
         expectedEx.expect(RuntimeException.class);
@@ -79,6 +260,93 @@ public class DataTSVFileTest {
         file.write(getDataRow(), new ChannelStockRow());
     }
 
+    @Test
+    public void testWritePartitioned() throws Exception {
+        List<String> channels = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            channels.add("channel-" + i);
+        }
+        FileSystem fs = new FileSystem(folder.getRoot());
+        fs.setParallelism(3);
+
+        // Only parts in the format of the writer are replaced
+        File dir = folder.newFolder("channels");
+        for (String name : new String[]{"part-00003.tsv", "part-00000.parquet", "part-notes.txt"}) {
+            Files.write(new File(dir, name).toPath(), new byte[]{1});
+        }
+        try (PartitionedWriter<String> writer = fs.openPartitionedWriter("channels", ChannelTSVFile::new)) {
+            writer.setRowsPerPart(4000);
+            writer.appendAll(channels);
+        }
+        List<String> names = new ArrayList<>(Arrays.asList(dir.list()));
+        Collections.sort(names);
+        assertEquals(Arrays.asList("_manifest.tsv", "part-00000.parquet", "part-00000.tsv", "part-00001.tsv",
+                "part-00002.tsv", "part-notes.txt"), names);
+        Dataset<String> dataset = fs.readDataset("channels", ChannelTSVFile::new);
+        assertEquals(channels, dataset.getData());
+        List<String> manifest = Files.readAllLines(new File(dir, PartitionedWriter.MANIFEST_FILE).toPath());
+        assertEquals("part-00002.tsv\t2000\t" + new File(dir, "part-00002.tsv").length(), manifest.get(3));
+
+        // A part which fails part way is still closed
+        channels.set(6000, "");
+        try {
+            try (PartitionedWriter<String> writer = fs.openPartitionedWriter("channels", ChannelTSVFile::new)) {
+                writer.setRowsPerPart(4000);
+                writer.appendAll(channels);
+            }
+            fail("Expected the part to fail");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Empty channel", e.getMessage());
+        }
+        assertEquals(0, countOpenFiles(dir));
+    }
+
+    private static long countOpenFiles(File dir) throws Exception {
+        File[] fds = new File("/proc/self/fd").listFiles();
+        Assume.assumeTrue(fds != null);
+        long count = 0;
+        for (File fd : fds) {
+            try {
+                if (Files.readSymbolicLink(fd.toPath()).startsWith(dir.getCanonicalFile().toPath())) {
+                    count++;
+                }
+            } catch (IOException e) {
+                // Closed while listing
+            }
+        }
+        return count;
+    }
+
+    private static class ChannelTSVFile extends AbstractTSVFile<String> {
+
+        @Override
+        protected String[] getHeaders() {
+            return new String[]{"channel"};
+        }
+
+        @Override
+        protected String read(DataRow r) {
+            return r.getValue("channel");
+        }
+
+        @Override
+        protected void write(DataRow r, String o) {
+            if (o.isEmpty()) {
+                throw new IllegalArgumentException("Empty channel");
+            }
+            r.setToken(0, o);
+        }
+    }
+
+    public static String getChannelStockContent(int lines) {
+        StringBuilder sb = new StringBuilder("channel\tday\tsku\tqty");
+        for (int i = 1; i <= lines; i++) {
+            sb.append("\n").append(i % 7).append("\t2019-01-").append(i % 1000 == 0 ? "32" : "15")
+                    .append("\t").append(i).append(i % 997 == 0 ? "" : "\t" + i % 13);
+        }
+        return sb.toString();
+    }
+
     public static DataRow getDataRow() {
         HashMap<String, Integer> map = new HashMap<>();
         map.put("channel", 0);
@@ -49,6 +49,29 @@ public class DemoParquetFile extends AbstractParquetFile<DemoParquetRow>{
         return o;
     }
 
+    @Override
+    protected boolean supportsDirectRead() {
+        return true;
+    }
+
+    @Override
+    protected DemoParquetRow read(ParquetRow r) {
+        DemoParquetRow o = new DemoParquetRow();
+        o.day = r.getLocalDate("day");
+        o.channel = r.getInt("channel", 0);
+        o.sku = r.isNull("sku") ? null : r.getInt("sku", 0);
+        o.revenue = r.getDouble("revenue", 0);
+        o.discount = r.isNull("discount") ? null : r.getDouble("discount", 0);
+        o.mrp = r.getLong("mrp", 0);
+        o.price_bucket = r.isNull("price_bucket") ? null : r.getLong("price_bucket", 0);
+        o.enabled = r.getBoolean("enabled", false);
+        o.is_online = r.isNull("is_online") ? null : r.getBoolean("is_online", false);
+        o.style_code = r.getString("style_code");
+        o.seasons = new HashSet<>(Arrays.asList(r.getString("seasons").split("#")));
+        o.store_codes = Arrays.asList(r.getString("store_codes").split("#"));
+        return o;
+    }
+
     @Override
     protected void write(GenericRecord r, DemoParquetRow o) {
         r.put("day", o.day);
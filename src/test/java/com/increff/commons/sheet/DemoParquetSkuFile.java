@@ -0,0 +1,37 @@
+package com.increff.commons.sheet;
+
+import org.apache.avro.generic.GenericRecord;
+import org.apache.parquet.schema.Type;
+
+import java.time.LocalDate;
+
+public class DemoParquetSkuFile extends AbstractParquetFile<DemoParquetRow> {
+
+    @Override
+    protected Type[] getSchema() {
+        return new DemoParquetFile().getSchema();
+    }
+
+    @Override
+    protected String[] getColumns() {
+        return new String[]{"day", "sku"};
+    }
+
+    @Override
+    protected DemoParquetRow read(GenericRecord r) {
+        if (r.getSchema().getFields().size() != 2) {
+            throw new IllegalStateException("Expected only projected fields");
+        }
+        DemoParquetRow o = new DemoParquetRow();
+        o.day = (LocalDate) r.get("day");
+        o.sku = (Integer) r.get("sku");
+        return o;
+    }
+
+    @Override
+    protected void write(GenericRecord r, DemoParquetRow o) {
+        r.put("day", o.day);
+        r.put("sku", o.sku);
+        r.put("style_code", o.style_code);
+    }
+}
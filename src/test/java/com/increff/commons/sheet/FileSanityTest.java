@@ -15,12 +15,17 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
 import static junit.framework.TestCase.assertTrue;
 
 public class FileSanityTest {
@@ -67,4 +72,23 @@ public class FileSanityTest {
         assertTrue(reader.getErrors().stream().map(k -> k.getError()).collect(Collectors.toSet()).contains("Record length does not match that of the header"));
     }
 
+    @Test
+    public void testReadMultiCharDelimiter() throws Exception {
+        TsvFile reader = new TsvFile();
+        reader.setHeaders(new HashSet<>(Arrays.asList("a", "b", "c")));
+        reader.setDelimiterValue("||");
+        String content = "a||b||c\r\n1||NULL||x|y\r\n||2||\n3||4\n";
+        reader.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        List<DataRow> rows = reader.getData();
+        assertEquals(2, rows.size());
+        assertEquals("1", rows.get(0).getValue("a"));
+        assertNull(rows.get(0).getValue("b"));
+        assertEquals("x|y", rows.get(0).getValue("c"));
+        assertEquals("", rows.get(1).getValue("a"));
+        assertEquals("2", rows.get(1).getValue("b"));
+        assertEquals("", rows.get(1).getValue("c"));
+        assertEquals(1, reader.getErrors().size());
+        assertEquals(3, reader.getErrors().get(0).getRow());
+    }
+
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021. Increff
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.increff.commons.sheet;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PagedListTest {
+
+    @Test
+    public void testAcrossPages() {
+        PagedList<Integer> list = new PagedList<>();
+        for (int i = 0; i < 250_000; i++) {
+            list.add(i);
+        }
+        assertEquals(250_000, list.size());
+        assertEquals(3, list.pageCount());
+        assertEquals(Integer.valueOf(0), list.get(0));
+        assertEquals(Integer.valueOf(99_999), list.get(99_999));
+        assertEquals(Integer.valueOf(100_000), list.get(100_000));
+        assertEquals(Integer.valueOf(249_999), list.get(249_999));
+
+        int expected = 0;
+        for (Integer i : list) {
+            assertEquals(expected++, i.intValue());
+        }
+        assertEquals(250_000, expected);
+
+        List<Integer> sub = list.subList(99_998, 100_002);
+        assertEquals(4, sub.size());
+        assertEquals(Integer.valueOf(100_001), sub.get(3));
+        assertEquals(list.getAll(), list);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfBounds() {
+        PagedList<String> list = new PagedList<>();
+        list.add("a");
+        list.get(1);
+    }
+
+    @Test
+    public void testClear() {
+        PagedList<String> list = new PagedList<>();
+        list.add("a");
+        list.add("b");
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertEquals(1, list.pageCount());
+        list.add("c");
+        assertEquals("c", list.get(0));
+    }
+
+}
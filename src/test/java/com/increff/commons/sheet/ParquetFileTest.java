@@ -1,18 +1,37 @@
 package com.increff.commons.sheet;
 
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.schema.MessageType;
+import org.junit.Assume;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ParquetFileTest {
 
@@ -21,6 +40,9 @@ public class ParquetFileTest {
     @Rule
     public ExpectedException expectedEx = ExpectedException.none();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     public static InputStream getInputStream(String resource) throws FileNotFoundException {
         return new FileInputStream(resource);
     }
@@ -78,6 +100,659 @@ public class ParquetFileTest {
 
     }
 
+    @Test
+    public void testReadFile() throws Exception {
+        DemoParquetFile file = new DemoParquetFile();
+        file.setData(new ArrayList<>(getExampleRowList()));
+        FileSystem fs = new FileSystem(folder.getRoot());
+        fs.write("demo.parquet", file);
+
+        DemoParquetFile readFile = new DemoParquetFile();
+        fs.read("demo.parquet", readFile);
+        List<DemoParquetRow> fileRow = readFile.getData();
+        List<DemoParquetRow> expectedRows = getExampleRowList();
+        assertEquals(2, fileRow.size());
+        assertEquals(expectedRows.get(0).sku, fileRow.get(0).sku);
+        assertEquals(expectedRows.get(0).day, fileRow.get(0).day);
+        assertEquals(expectedRows.get(0).style_code, fileRow.get(0).style_code);
+        assertEquals(expectedRows.get(1).price_bucket, fileRow.get(1).price_bucket);
+        assertTrue(readFile.getErrors().isEmpty());
+    }
+
+    @Test
+    public void testReadProjection() throws Exception {
+        DemoParquetFile file = new DemoParquetFile();
+        file.setData(new ArrayList<>(getExampleRowList()));
+        FileSystem fs = new FileSystem(folder.getRoot());
+        fs.write("demo.parquet", file);
+
+        DemoParquetSkuFile skuFile = new DemoParquetSkuFile();
+        fs.read("demo.parquet", skuFile);
+        assertTrue(skuFile.getErrors().isEmpty());
+        assertEquals(2, skuFile.getData().size());
+        assertEquals(Integer.valueOf(25), skuFile.getData().get(0).sku);
+        assertEquals(LocalDate.of(2023, 10, 15), skuFile.getData().get(0).day);
+        assertNull(skuFile.getData().get(0).style_code);
+    }
+
+    @Test
+    public void testReadFilter() throws Exception {
+        List<DemoParquetRow> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            DemoParquetRow row = getExampleRowList().get(0);
+            row.day = LocalDate.of(2023, 1, 1).plusDays(i);
+            row.channel = i % 5;
+            row.sku = i;
+            rows.add(row);
+        }
+        // Five row groups of 200 rows each
+        DemoParquetFile file = new DemoParquetFile();
+        file.setParallelism(2);
+        file.setSliceRows(200);
+        file.setData(rows);
+        FileSystem fs = new FileSystem(folder.getRoot());
+        fs.write("demo.parquet", file);
+
+        DemoParquetFile readFile = new DemoParquetFile();
+        readFile.setFilter(ParquetFilter.and(
+                ParquetFilter.ge("day", LocalDate.of(2023, 1, 1).plusDays(900)),
+                ParquetFilter.in("channel", 1, 2),
+                ParquetFilter.ne("style_code", "Xyz")));
+        fs.read("demo.parquet", readFile);
+        assertEquals(40, readFile.getData().size());
+        for (DemoParquetRow row : readFile.getData()) {
+            assertTrue(row.sku >= 900);
+            assertTrue(row.channel == 1 || row.channel == 2);
+        }
+
+        // Row groups whose statistics cannot match are skipped
+        ParquetLocalFileReader input = new ParquetLocalFileReader(new File(folder.getRoot(), "demo.parquet"));
+        MessageType schema;
+        try (ParquetFileReader reader = ParquetFileReader.open(input)) {
+            assertEquals(5, reader.getRowGroups().size());
+            schema = reader.getFileMetaData().getSchema();
+        }
+        ParquetReadOptions options = ParquetReadOptions.builder()
+                .withRecordFilter(FilterCompat.get(ParquetFilter.ge("sku", 900).toPredicate(schema)))
+                .build();
+        try (ParquetFileReader reader = ParquetFileReader.open(input, options)) {
+            assertEquals(1, reader.getRowGroups().size());
+            assertEquals(200, reader.getFilteredRecordCount());
+        }
+
+        // Values which do not fit the type of the column are rejected
+        for (ParquetFilter invalid : new ParquetFilter[]{ParquetFilter.eq("sku", "123"), ParquetFilter.eq("sku", 3.7),
+                ParquetFilter.lt("sku", 1L << 40), ParquetFilter.in("revenue", 1.5, "2"),
+                ParquetFilter.eq("style_code", 12), ParquetFilter.eq("enabled", "true")}) {
+            readFile.setFilter(invalid);
+            try {
+                fs.read("demo.parquet", readFile);
+                fail("Expected the filter to be rejected");
+            } catch (SheetException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid filter value"));
+            }
+        }
+        for (ParquetFilter empty : new ParquetFilter[]{ParquetFilter.in("day"), ParquetFilter.notIn("sku")}) {
+            readFile.setFilter(empty);
+            try {
+                fs.read("demo.parquet", readFile);
+                fail("Expected the filter to be rejected");
+            } catch (SheetException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("No values in filter on column"));
+            }
+        }
+        readFile.setFilter(ParquetFilter.eq("sku", 900.0));
+        fs.read("demo.parquet", readFile);
+        assertEquals(1, readFile.getData().size());
+    }
+
+    @Test
+    public void testReadDirect() throws Exception {
+        DemoParquetFile file = new DemoParquetFile();
+        file.setData(new ArrayList<>(getExampleRowList()));
+        FileSystem fs = new FileSystem(folder.getRoot());
+        fs.write("demo.parquet", file);
+
+        DemoParquetFile readFile = new DemoParquetFile();
+        readFile.setDirectRead(true);
+        fs.read("demo.parquet", readFile);
+        assertTrue(readFile.getErrors().isEmpty());
+        List<DemoParquetRow> fileRow = readFile.getData();
+        List<DemoParquetRow> expectedRows = getExampleRowList();
+        for (int i = 0; i < expectedRows.size(); i++) {
+            assertEquals(expectedRows.get(i).day, fileRow.get(i).day);
+            assertEquals(expectedRows.get(i).channel, fileRow.get(i).channel);
+            assertEquals(expectedRows.get(i).sku, fileRow.get(i).sku);
+            assertEquals(expectedRows.get(i).revenue, fileRow.get(i).revenue, 0.01);
+            assertEquals(expectedRows.get(i).discount, fileRow.get(i).discount);
+            assertEquals(expectedRows.get(i).mrp, fileRow.get(i).mrp);
+            assertEquals(expectedRows.get(i).price_bucket, fileRow.get(i).price_bucket);
+            assertEquals(expectedRows.get(i).enabled, fileRow.get(i).enabled);
+            assertEquals(expectedRows.get(i).is_online, fileRow.get(i).is_online);
+            // Null strings are read as empty, as on the Avro path
+            assertEquals(expectedRows.get(i).style_code == null ? "" : expectedRows.get(i).style_code,
+                    fileRow.get(i).style_code);
+            assertEquals(expectedRows.get(i).seasons, fileRow.get(i).seasons);
+            assertEquals(expectedRows.get(i).store_codes, fileRow.get(i).store_codes);
+        }
+
+        // Classes without read(ParquetRow) fail before any row is read, instead of reporting every row as an error
+        DemoParquetSkuFile skuFile = new DemoParquetSkuFile();
+        skuFile.setDirectRead(true);
+        expectedEx.expect(SheetException.class);
+        expectedEx.expectMessage("Direct read is not implemented for " + DemoParquetSkuFile.class.getName());
+        fs.read("demo.parquet", skuFile);
+    }
+
+    @Test
+    public void testWriteProfiles() throws Exception {
+        ParquetWriterProfile tuned = ParquetWriterProfile.smallFastScan();
+        tuned.setRowGroupSize(16 * 1024);
+        tuned.setDictionary("style_code", false);
+        tuned.setBloomFilter("sku", 1000L);
+        ParquetWriterProfile gzip = ParquetWriterProfile.defaults();
+        gzip.setCodec(CompressionCodecName.GZIP);
+        ParquetWriterProfile[] profiles = {ParquetWriterProfile.fastWrite(), tuned, gzip};
+
+        FileSystem fs = new FileSystem(folder.getRoot());
+        for (ParquetWriterProfile profile : profiles) {
+            List<DemoParquetRow> rows = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                DemoParquetRow row = getExampleRowList().get(0);
+                row.sku = i;
+                rows.add(row);
+            }
+            DemoParquetFile file = new DemoParquetFile();
+            file.setWriterProfile(profile);
+            file.setData(rows);
+            fs.write("demo.parquet", file);
+
+            // The footer reflects the codec, row group size, dictionary and bloom filter settings of the profile
+            ParquetLocalFileReader input = new ParquetLocalFileReader(new File(folder.getRoot(), "demo.parquet"));
+            try (ParquetFileReader reader = ParquetFileReader.open(input)) {
+                List<BlockMetaData> rowGroups = reader.getRowGroups();
+                if (profile == tuned) {
+                    assertTrue(rowGroups.size() > 1);
+                } else {
+                    assertEquals(1, rowGroups.size());
+                }
+                for (BlockMetaData block : rowGroups) {
+                    assertTrue(profile != tuned || block.getTotalByteSize() <= 2 * tuned.getRowGroupSize());
+                    for (ColumnChunkMetaData chunk : block.getColumns()) {
+                        String column = chunk.getPath().toDotString();
+                        assertEquals(profile.getCodec(), chunk.getCodec());
+                        boolean dictionary = chunk.getEncodings().stream().anyMatch(Encoding::usesDictionary);
+                        if (profile == profiles[0] || (profile == tuned && column.equals("style_code"))) {
+                            assertFalse(column, dictionary);
+                        } else if (column.equals("channel") || column.equals("style_code")) {
+                            assertTrue(column, dictionary);
+                        }
+                        assertEquals(profile == tuned && column.equals("sku"), reader.readBloomFilter(chunk) != null);
+                    }
+                }
+            }
+
+            DemoParquetFile readFile = new DemoParquetFile();
+            readFile.setMaxRows(10_000);
+            fs.read("demo.parquet", readFile);
+            assertEquals(5000, readFile.getData().size());
+            assertEquals(Integer.valueOf(4999), readFile.getData().get(4999).sku);
+        }
+    }
+
+    @Test
+    public void testReadTable() throws Exception {
+        List<DemoParquetRow> rows = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            rows.addAll(getExampleRowList());
+            rows.get(rows.size() - 2).sku = i;
+            // Row groups see different styles, first in a different order, so their dictionaries are re-encoded
+            rows.get(rows.size() - 2).style_code = "style" + (2999 - i) / 700;
+        }
+        DemoParquetFile file = new DemoParquetFile();
+        file.setData(rows);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        file.write(os);
+
+        TableSchema schema = new TableSchema();
+        schema.addColumn("day", ColumnType.DATE);
+        schema.addColumn("sku", ColumnType.INT);
+        schema.addColumn("revenue", ColumnType.DOUBLE);
+        schema.addColumn("mrp", ColumnType.LONG);
+        schema.addColumn("enabled", ColumnType.BOOLEAN);
+        schema.addColumn("style_code", ColumnType.STRING);
+        DemoParquetFile readFile = new DemoParquetFile();
+        readFile.setMaxRows(10_000);
+        ColumnTable table = readFile.readTable(new ByteArrayInputStream(os.toByteArray()), schema);
+
+        assertEquals(rows.size(), table.size());
+        for (int i = 0; i < rows.size(); i++) {
+            DemoParquetRow row = rows.get(i);
+            assertEquals(row.day, table.getLocalDate(i, 0));
+            assertEquals(row.sku, table.getValue(i, 1));
+            assertEquals(row.revenue, table.getDouble(i, 2, 0), 0);
+            assertEquals(row.mrp, table.getLong(i, 3, 0));
+            assertEquals(row.enabled, table.getBoolean(i, 4, true));
+            assertEquals(row.style_code, table.getString(i, 5));
+        }
+        assertTrue(table.isNull(1, 1));
+        assertEquals(5, table.getColumn("style_code").getDictionary().size());
+
+        // Row groups of a local file are read in parallel and appended in file order
+        file.setParallelism(2);
+        file.setSliceRows(2000);
+        File parquetFile = folder.newFile("demo.parquet");
+        try (OutputStream fos = new FileOutputStream(parquetFile)) {
+            file.write(fos);
+        }
+        try (ParquetFileReader reader = ParquetFileReader.open(new ParquetLocalFileReader(parquetFile))) {
+            assertTrue(reader.getFooter().getBlocks().size() > 1);
+        }
+        readFile.setParallelism(4);
+        ColumnTable fileTable = readFile.readTable(parquetFile, schema);
+        assertEquals(table.size(), fileTable.size());
+        for (int i = 0; i < table.size(); i++) {
+            for (int col = 0; col < schema.getNames().length; col++) {
+                assertEquals(table.getValue(i, col), fileTable.getValue(i, col));
+            }
+        }
+        assertEquals(5, fileTable.getColumn("style_code").getDictionary().size());
+        readFile.setMaxRows(1000);
+        try {
+            readFile.readTable(parquetFile, schema);
+            fail("Expected maxRows to be exceeded");
+        } catch (SheetException e) {
+            assertEquals("Maximum rows allowed is : 1000", e.getMessage());
+        }
+
+        expectedEx.expect(SheetException.class);
+        expectedEx.expectMessage("Column 'style_code' of type BINARY cannot be read as INT");
+        TableSchema invalid = new TableSchema();
+        invalid.addColumn("style_code", ColumnType.INT);
+        readFile.readTable(new ByteArrayInputStream(os.toByteArray()), invalid);
+    }
+
+    @Test
+    public void testReadInterner() throws Exception {
+        List<DemoParquetRow> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            DemoParquetRow row = getExampleRowList().get(0);
+            row.style_code = "style-" + i % 5;
+            rows.add(row);
+        }
+        // Plain encoded, so the direct reader decodes every value rather than once per dictionary page
+        ParquetWriterProfile profile = ParquetWriterProfile.defaults();
+        profile.setDictionary("style_code", false);
+        DemoParquetFile file = new DemoParquetFile();
+        file.setWriterProfile(profile);
+        file.setData(rows);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        file.write(os);
+
+        for (boolean directRead : new boolean[]{false, true}) {
+            StringInterner interner = new StringInterner();
+            DemoParquetFile readFile = new DemoParquetFile();
+            readFile.setDirectRead(directRead);
+            readFile.setInterner(interner);
+            readFile.read(new ByteArrayInputStream(os.toByteArray()));
+            List<DemoParquetRow> read = readFile.getData();
+            assertEquals(rows.size(), read.size());
+            for (int i = 0; i < read.size(); i++) {
+                assertEquals(rows.get(i).style_code, read.get(i).style_code);
+                assertSame(read.get(i % 5).style_code, read.get(i).style_code);
+            }
+            assertTrue(interner.getHits() >= 995);
+        }
+
+        // Dictionary entries go through the interner too, once per dictionary page
+        file.setWriterProfile(ParquetWriterProfile.defaults());
+        os.reset();
+        file.write(os);
+        StringInterner interner = new StringInterner();
+        String style = interner.intern(new String("style-3"));
+        DemoParquetFile readFile = new DemoParquetFile();
+        readFile.setDirectRead(true);
+        readFile.setInterner(interner);
+        readFile.read(new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(rows.size(), readFile.getData().size());
+        assertSame(style, readFile.getData().get(3).style_code);
+        assertTrue(interner.getHits() >= 1);
+        assertTrue(interner.getHits() + interner.getMisses() < 100);
+    }
+
+    @Test
+    public void testWriteIncremental() throws Exception {
+        DemoParquetFile file = new DemoParquetFile();
+        file.setReuseRecords(true);
+        List<Integer> progress = new ArrayList<>();
+        file.setProgressMonitor(progress::add);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (RowWriter<DemoParquetRow> writer = file.openWriter(os)) {
+            for (int i = 0; i < 2000; i++) {
+                DemoParquetRow row = getExampleRowList().get(0);
+                row.sku = i;
+                writer.append(row);
+            }
+            writer.appendAll(getExampleRowList());
+        }
+        assertEquals(2002, progress.size());
+        assertEquals(Integer.valueOf(2002), progress.get(2001));
+
+        DemoParquetFile readFile = new DemoParquetFile();
+        readFile.read(new ByteArrayInputStream(os.toByteArray()));
+        List<DemoParquetRow> rows = readFile.getData();
+        assertEquals(2002, rows.size());
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(Integer.valueOf(i), rows.get(i).sku);
+        }
+        assertEquals(getExampleRowList().get(1).price_bucket, rows.get(2001).price_bucket);
+    }
+
+    @Test
+    public void testStreamWriterPosition() throws Exception {
+        // Offsets of row groups and the footer stay correct past 2 GiB of output
+        long[] written = {0};
+        OutputStream counting = new OutputStream() {
+            @Override
+            public void write(int b) {
+                written[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written[0] += len;
+            }
+        };
+        byte[] chunk = new byte[64 * 1024 * 1024];
+        try (PositionOutputStream out = new ParquetStreamWriter(counting).create(0)) {
+            for (int i = 0; i < 32; i++) {
+                out.write(chunk);
+            }
+            out.write(1);
+            assertEquals(written[0], out.getPos());
+            assertTrue(out.getPos() > Integer.MAX_VALUE);
+        }
+    }
+
+    @Test
+    public void testWriteParallel() throws Exception {
+        List<DemoParquetRow> rows = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            DemoParquetRow row = getExampleRowList().get(i % 2);
+            row.sku = i;
+            rows.add(row);
+        }
+        ParquetWriterProfile profile = ParquetWriterProfile.defaults();
+        profile.setBloomFilter("sku", 5000L);
+        DemoParquetFile sequential = new DemoParquetFile();
+        sequential.setWriterProfile(profile);
+        sequential.setData(rows);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        sequential.write(expected);
+
+        for (int rowCount : new int[]{0, 1, 999, 5000}) {
+            DemoParquetFile file = new DemoParquetFile();
+            file.setWriterProfile(profile);
+            file.setParallelism(4);
+            file.setSliceRows(1000);
+            file.setData(rows.subList(0, rowCount));
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            file.write(os);
+
+            // One row group per slice, read back in order
+            ParquetStreamReader input = new ParquetStreamReader(os.toByteArray());
+            try (ParquetFileReader reader = ParquetFileReader.open(input)) {
+                assertEquals((rowCount + 999) / 1000, reader.getRowGroups().size());
+                assertEquals(rowCount, reader.getRecordCount());
+            }
+            DemoParquetFile readFile = new DemoParquetFile();
+            readFile.read(new ByteArrayInputStream(os.toByteArray()));
+            assertEquals(rowCount, readFile.getData().size());
+            for (int i = 0; i < rowCount; i++) {
+                assertEquals(Integer.valueOf(i), readFile.getData().get(i).sku);
+                assertEquals(rows.get(i).price_bucket, readFile.getData().get(i).price_bucket);
+            }
+        }
+
+        // Statistics and bloom filters are carried over, so filters skip row groups as on sequential output
+        DemoParquetFile file = new DemoParquetFile();
+        file.setWriterProfile(profile);
+        file.setParallelism(3);
+        file.setSliceRows(700);
+        file.setData(rows);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        file.write(os);
+        for (byte[] bytes : new byte[][]{expected.toByteArray(), os.toByteArray()}) {
+            DemoParquetFile readFile = new DemoParquetFile();
+            readFile.setFilter(ParquetFilter.eq("sku", 4321));
+            readFile.read(new ByteArrayInputStream(bytes));
+            assertEquals(1, readFile.getData().size());
+            assertEquals(Integer.valueOf(4321), readFile.getData().get(0).sku);
+        }
+        ParquetStreamReader input = new ParquetStreamReader(os.toByteArray());
+        try (ParquetFileReader reader = ParquetFileReader.open(input)) {
+            for (BlockMetaData block : reader.getRowGroups()) {
+                for (ColumnChunkMetaData chunk : block.getColumns()) {
+                    assertTrue(reader.readOffsetIndex(chunk) != null);
+                }
+                assertTrue(reader.readBloomFilter(block.getColumns().get(1)) != null);
+            }
+        }
+
+        // A slice which fails when finishing still closes the output
+        rows.get(4999).store_codes = null;
+        boolean[] closed = {false};
+        ByteArrayOutputStream failed = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        try {
+            file.write(failed);
+            fail("Expected the slice to fail");
+        } catch (NullPointerException e) {
+            assertTrue(closed[0]);
+        }
+    }
+
+    @Test
+    public void testReadParallel() throws Exception {
+        List<DemoParquetRow> rows = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            DemoParquetRow row = getExampleRowList().get(i % 2);
+            row.sku = i;
+            rows.add(row);
+        }
+        DemoParquetFile file = new DemoParquetFile();
+        file.setParallelism(4);
+        file.setSliceRows(600);
+        file.setData(rows);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        file.write(os);
+
+        for (boolean directRead : new boolean[]{false, true}) {
+            DemoParquetFile sequential = new DemoParquetFile();
+            sequential.setDirectRead(directRead);
+            sequential.read(new ByteArrayInputStream(os.toByteArray()));
+            DemoParquetFile parallel = new DemoParquetFile();
+            parallel.setDirectRead(directRead);
+            parallel.setParallelism(4);
+            parallel.read(new ByteArrayInputStream(os.toByteArray()));
+
+            // Null style codes of odd rows are read as empty strings by both paths
+            assertEquals(5000, parallel.getData().size());
+            assertEquals(sequential.getData().size(), parallel.getData().size());
+            for (int i = 0; i < sequential.getData().size(); i++) {
+                assertEquals(sequential.getData().get(i).sku, parallel.getData().get(i).sku);
+                assertEquals(i % 2 == 0 ? "Abc" : "", parallel.getData().get(i).style_code);
+                assertEquals(sequential.getData().get(i).style_code, parallel.getData().get(i).style_code);
+                assertEquals(sequential.getData().get(i).seasons, parallel.getData().get(i).seasons);
+                assertEquals(sequential.getData().get(i).store_codes, parallel.getData().get(i).store_codes);
+            }
+            assertTrue(sequential.getErrors().isEmpty());
+            assertTrue(parallel.getErrors().isEmpty());
+
+            DemoParquetFile limited = new DemoParquetFile();
+            limited.setDirectRead(directRead);
+            limited.setParallelism(4);
+            limited.setMaxRows(1500);
+            try {
+                limited.read(new ByteArrayInputStream(os.toByteArray()));
+                fail("Expected maxRows to be enforced");
+            } catch (SheetException e) {
+                assertEquals("Maximum rows allowed is : 1500", e.getMessage());
+            }
+        }
+
+        // Filters are applied within each row group
+        DemoParquetFile filtered = new DemoParquetFile();
+        filtered.setParallelism(4);
+        filtered.setFilter(ParquetFilter.eq("sku", 4321));
+        filtered.read(new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(1, filtered.getData().size());
+        assertEquals(Integer.valueOf(4321), filtered.getData().get(0).sku);
+    }
+
+    @Test
+    public void testWritePartitioned() throws Exception {
+        List<DemoParquetRow> rows = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            DemoParquetRow row = getExampleRowList().get(i % 2);
+            row.sku = i;
+            rows.add(row);
+        }
+        FileSystem fs = new FileSystem(folder.getRoot());
+        fs.setParallelism(3);
+
+        // Parts roll over by row count, and read back in order
+        try (PartitionedWriter<DemoParquetRow> writer = fs.openPartitionedWriter("rolled", DemoParquetFile::new)) {
+            writer.setRowsPerPart(1200);
+            writer.appendAll(rows);
+        }
+        Dataset<DemoParquetRow> dataset = fs.readDataset("rolled", DemoParquetFile::new);
+        assertEquals(Arrays.asList("part-00000.parquet", "part-00001.parquet", "part-00002.parquet",
+                "part-00003.parquet", "part-00004.parquet"),
+                dataset.getFiles().stream().map(p -> new File(p).getName()).collect(Collectors.toList()));
+        assertEquals(5000, dataset.getData().size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(Integer.valueOf(i), dataset.getData().get(i).sku);
+        }
+        List<String> manifest = Files.readAllLines(new File(folder.getRoot(), "rolled/_manifest.tsv").toPath());
+        assertEquals(6, manifest.size());
+        assertEquals("file\trows\tbytes", manifest.get(0));
+        assertEquals("part-00004.parquet\t200\t" + new File(folder.getRoot(), "rolled/part-00004.parquet").length(),
+                manifest.get(5));
+
+        // Hash partitioning keeps all rows of a key in one part, in their original order
+        try (PartitionedWriter<DemoParquetRow> writer = fs.openPartitionedWriter("hashed", DemoParquetFile::new)) {
+            writer.setHashPartitioning(4, r -> r.sku % 10);
+            writer.appendAll(rows);
+            writer.close();
+            assertEquals(4, writer.getParts().size());
+            assertEquals(5000, writer.getParts().stream().mapToLong(DatasetPart::getRows).sum());
+        }
+        for (int part = 0; part < 4; part++) {
+            DemoParquetFile file = new DemoParquetFile();
+            fs.read(String.format("hashed/part-%05d.parquet", part), file);
+            int previous = -1;
+            for (DemoParquetRow row : file.getData()) {
+                assertEquals(part, Math.floorMod(Integer.hashCode(row.sku % 10), 4));
+                assertTrue(row.sku > previous);
+                previous = row.sku;
+            }
+        }
+
+        // Range partitioning, where a new write replaces the parts of the previous one
+        try (PartitionedWriter<DemoParquetRow> writer = fs.openPartitionedWriter("hashed", DemoParquetFile::new)) {
+            writer.setRangePartitioning(r -> r.sku, Arrays.asList(1000, 4000));
+            writer.setManifest(false);
+            writer.appendAll(rows);
+        }
+        dataset = fs.readDataset("hashed", DemoParquetFile::new);
+        assertEquals(3, dataset.getFiles().size());
+        assertEquals(5000, dataset.getData().size());
+        assertEquals(Integer.valueOf(999), dataset.getData().get(999).sku);
+        assertFalse(new File(folder.getRoot(), "hashed/_manifest.tsv").exists());
+        DemoParquetFile file = new DemoParquetFile();
+        fs.read("hashed/part-00002.parquet", file);
+        assertEquals(1000, file.getData().size());
+        assertEquals(Integer.valueOf(4000), file.getData().get(0).sku);
+    }
+
+    @Test
+    public void testCodecCache() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            DemoParquetFile file = new DemoParquetFile();
+            file.read(getInputStream(PARQUET_TEST_FILE));
+            assertEquals(getExampleRowList().size(), file.getData().size());
+            assertEquals(getExampleRowList().get(0).style_code, file.getData().get(0).style_code);
+        }
+
+        // The schema is compiled once per class
+        ParquetCodec codec = ParquetCodec.get(DemoParquetFile.class, () -> {
+            throw new AssertionError("Schema compiled again");
+        });
+        assertSame(codec, ParquetCodec.get(DemoParquetFile.class, null));
+        assertEquals(12, codec.getColumns().length);
+    }
+
+    @Test
+    public void testWriteReuseRecords() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+
+        int rows = 200_000;
+        List<DemoParquetRow> data = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            DemoParquetRow row = new DemoParquetRow();
+            row.day = LocalDate.of(2023, 10, 1 + i % 30);
+            row.sku = i;
+            row.style_code = "STYLE-" + (i % 1000) + "-\u00e9\u20ac";
+            data.add(row);
+        }
+
+        long[] perRow = new long[2];
+        for (int run = 0; run < 3; run++) {
+            for (int reuse = 0; reuse < 2; reuse++) {
+                DemoParquetSkuFile file = new DemoParquetSkuFile();
+                file.setReuseRecords(reuse == 1);
+                file.setData(data);
+                ByteArrayOutputStream os = new ByteArrayOutputStream(8 * 1024 * 1024);
+                long start = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                file.write(os);
+                perRow[reuse] = (threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - start) / rows;
+            }
+        }
+        // Records, string buffers and boxed dates are no longer allocated per row. What remains is the Binary wrapper
+        // parquet creates per string value, and the dictionaries and pages built by the column writers
+        assertTrue("Allocated " + perRow[1] + " bytes per row", perRow[1] < 128);
+        assertTrue("Saved " + (perRow[0] - perRow[1]) + " bytes per row", perRow[1] <= perRow[0] - 48);
+
+        byte[] scratch = new byte[64];
+        for (String str : Arrays.asList("", "Abc", "\u00e9\u20ac", "\ud83d\ude00x", "a\ud83db", "\ude00")) {
+            byte[] expected = str.getBytes(StandardCharsets.UTF_8);
+            assertEquals(Arrays.toString(expected),
+                    Arrays.toString(Arrays.copyOf(scratch, ParquetCodec.encodeUtf8(str, scratch))));
+        }
+
+        DemoParquetSkuFile file = new DemoParquetSkuFile();
+        file.setReuseRecords(true);
+        file.setData(data);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        file.write(os);
+        DemoParquetSkuFile readFile = new DemoParquetSkuFile();
+        readFile.setColumns("day", "sku", "style_code");
+        readFile.setMaxRows(rows);
+        readFile.read(new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(rows, readFile.getData().size());
+        for (int i = 0; i < rows; i += 997) {
+            assertEquals(data.get(i).day, readFile.getData().get(i).day);
+            assertEquals(data.get(i).sku, readFile.getData().get(i).sku);
+        }
+    }
+
     @Test
     public void  testReadSchemaMismatch() throws Exception {
 